@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.security.KeyStore;
+import java.util.function.Supplier;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+
+import org.wildfly.security.ssl.CipherSuiteSelector;
+
+/**
+ * Common configuration shared by the benchmarks, this matches the configuration {@link SSLServer} and
+ * {@link SSLClient} use.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+final class Benchmarks {
+
+    static final String PASSWORD = "keystore_password";
+
+    private Benchmarks() {
+    }
+
+    static Supplier<KeyStore> keyStoreSupplier(String keystore) {
+        return KeyStoreSupplier.builder()
+                .setType("JKS")
+                .setPath(keystore)
+                .setPassword(PASSWORD.toCharArray())
+                .build();
+    }
+
+    static Supplier<KeyManager[]> keyManagerSupplier(Supplier<KeyStore> keyStoreSupplier) {
+        return KeyManagerSupplier.builder()
+                .setAlgorithm("SunX509")
+                .setPassword(PASSWORD.toCharArray())
+                .setKeyStoreSupplier(keyStoreSupplier)
+                .build();
+    }
+
+    static SSLContextSupplier.Builder serverContextBuilder(String keystore, String protocol) {
+        return SSLContextSupplier.builder()
+                .setProtocol(protocol)
+                .setKeyManagerSupplier(keyManagerSupplier(keyStoreSupplier(keystore)));
+    }
+
+    static SSLContextSupplier.Builder clientContextBuilder(String protocol) {
+        return SSLContextSupplier.builder()
+                .setProtocol(protocol)
+                .setTrustManagerSupplier(TrustManagerSupplier.trustingSupplier());
+    }
+
+    /**
+     * Evaluate a cipher selector string against the suites supported by the context.
+     *
+     * @return the enabled cipher suites or {@code null} if no selector string was specified.
+     */
+    static String[] enabledCiphers(String ciphers, SSLContext sslContext) {
+        if (ciphers == null || ciphers.length() == 0) {
+            return null;
+        }
+
+        return CipherSuiteSelector.fromString(ciphers).evaluate(sslContext.getSupportedSSLParameters().getCipherSuites());
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of a full handshake between a client and server in the same JVM using {@link LoopbackHandshake}, no
+ * network I/O is included.
+ *
+ * Not every combination of parameters can negotiate the requested protocol, DSA keys can not be used with TLSv1.3 and
+ * the cipher selector strings only match TLSv1.2 suites, these combinations fail in setup rather than silently
+ * measuring a different protocol.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @Param({ "rsa.keystore", "ec.keystore", "dsa.keystore" })
+    public String keystore;
+
+    @Param({ "TLSv1.2", "TLSv1.3" })
+    public String protocol;
+
+    /**
+     * The cipher selector string, empty for the provider defaults.
+     */
+    @Param({ "", "AESGCM" })
+    public String ciphers;
+
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private String[] enabledCiphers;
+
+    @Setup
+    public void setup() {
+        serverContext = Benchmarks.serverContextBuilder(keystore, protocol).build().get();
+        clientContext = Benchmarks.clientContextBuilder(protocol).build().get();
+        enabledCiphers = Benchmarks.enabledCiphers(ciphers, serverContext);
+
+        String negotiated;
+        try {
+            negotiated = LoopbackHandshake.handshake(serverContext, clientContext, enabledCiphers).getProtocol();
+        } catch (SSLException e) {
+            throw new IllegalStateException(String.format("Unable to handshake using %s with %s", protocol, keystore), e);
+        }
+        if (protocol.equals(negotiated) == false) {
+            throw new IllegalStateException(String.format("Negotiated %s rather than %s with ciphers '%s'", negotiated, protocol, ciphers));
+        }
+    }
+
+    @Benchmark
+    public SSLSession handshake() throws SSLException {
+        return LoopbackHandshake.handshake(serverContext, clientContext, enabledCiphers);
+    }
+
+}
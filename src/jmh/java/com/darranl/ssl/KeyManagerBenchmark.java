@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.X509KeyManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the calls a server handshake makes to the {@link X509KeyManager}, comparing the key manager returned
+ * by {@link KeyManagerSupplier} with the unwrapped SunX509 key manager.
+ *
+ * Run with {@code -prof gc} to compare the allocation rate.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class KeyManagerBenchmark {
+
+    @Param({ "rsa.keystore", "ec.keystore", "dsa.keystore" })
+    public String keystore;
+
+    @Param({ "", "test" })
+    public String fixedAlias;
+
+    private String keyType;
+    private X509KeyManager raw;
+    private X509KeyManager wrapped;
+
+    @Setup
+    public void setup() throws Exception {
+        keyType = keystore.substring(0, keystore.indexOf('.')).toUpperCase();
+
+        KeyStore keyStore = Benchmarks.keyStoreSupplier(keystore).get();
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+        keyManagerFactory.init(keyStore, Benchmarks.PASSWORD.toCharArray());
+        raw = (X509KeyManager) keyManagerFactory.getKeyManagers()[0];
+
+        KeyManager[] keyManagers = KeyManagerSupplier.builder()
+                .setAlgorithm("SunX509")
+                .setPassword(Benchmarks.PASSWORD.toCharArray())
+                .setFixedAlias(fixedAlias.length() > 0 ? fixedAlias : null)
+                .setKeyStoreSupplier(() -> keyStore)
+                .build()
+                .get();
+        wrapped = (X509KeyManager) keyManagers[0];
+    }
+
+    @Benchmark
+    public void raw(Blackhole blackhole) {
+        select(raw, blackhole);
+    }
+
+    @Benchmark
+    public void wrapped(Blackhole blackhole) {
+        select(wrapped, blackhole);
+    }
+
+    private void select(X509KeyManager keyManager, Blackhole blackhole) {
+        String alias = keyManager.chooseServerAlias(keyType, null, null);
+        X509Certificate[] certificateChain = keyManager.getCertificateChain(alias);
+        PrivateKey privateKey = keyManager.getPrivateKey(alias);
+
+        blackhole.consume(certificateChain);
+        blackhole.consume(privateKey);
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of concurrent handshakes using each {@link SecureRandom} algorithm and {@link SecureRandomSupplier.Mode},
+ * the same supplier is used for both the server and client context.
+ *
+ * The {@code nextBytes} benchmark isolates the cost of the {@link SecureRandom} from the rest of the handshake.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SecureRandomBenchmark {
+
+    /**
+     * The algorithm, empty for the JVM default.
+     */
+    @Param({ "", "NativePRNGNonBlocking", "DRBG", "SHA1PRNG" })
+    public String algorithm;
+
+    @Param({ "SHARED", "THREAD_LOCAL", "STRIPED" })
+    public String mode;
+
+    private SecureRandom secureRandom;
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+
+    @Setup
+    public void setup() {
+        Supplier<SecureRandom> secureRandomSupplier = SecureRandomSupplier.builder()
+                .setAlgorithm(algorithm.length() > 0 ? algorithm : null)
+                .setMode(SecureRandomSupplier.Mode.valueOf(mode))
+                .build();
+
+        secureRandom = secureRandomSupplier.get();
+        serverContext = Benchmarks.serverContextBuilder("ec.keystore", "TLSv1.2")
+                .setSecureRandomSupplier(secureRandomSupplier)
+                .build()
+                .get();
+        clientContext = Benchmarks.clientContextBuilder("TLSv1.2")
+                .setSecureRandomSupplier(secureRandomSupplier)
+                .build()
+                .get();
+    }
+
+    @Benchmark
+    public SSLSession handshake() throws SSLException {
+        return LoopbackHandshake.handshake(serverContext, clientContext, null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] nextBytes() {
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+
+        return bytes;
+    }
+
+}
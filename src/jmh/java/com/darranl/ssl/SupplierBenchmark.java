@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the suppliers used to construct the {@link SSLContext}.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SupplierBenchmark {
+
+    @Param({ "rsa.keystore", "ec.keystore", "dsa.keystore" })
+    public String keystore;
+
+    @Param({ "TLSv1.2", "TLSv1.3" })
+    public String protocol;
+
+    private Supplier<KeyStore> keyStoreSupplier;
+    private Supplier<KeyManager[]> keyManagerSupplier;
+    private Supplier<SSLContext> sslContextSupplier;
+
+    @Setup
+    public void setup() {
+        keyStoreSupplier = Benchmarks.keyStoreSupplier(keystore);
+        keyManagerSupplier = Benchmarks.keyManagerSupplier(keyStoreSupplier);
+        sslContextSupplier = SSLContextSupplier.builder()
+                .setProtocol(protocol)
+                .setKeyManagerSupplier(keyManagerSupplier)
+                .build();
+    }
+
+    @Benchmark
+    public KeyStore keyStoreSupplier() {
+        return keyStoreSupplier.get();
+    }
+
+    @Benchmark
+    public KeyManager[] keyManagerSupplier() {
+        return keyManagerSupplier.get();
+    }
+
+    @Benchmark
+    public SSLContext sslContextSupplier() {
+        return sslContextSupplier.get();
+    }
+
+}
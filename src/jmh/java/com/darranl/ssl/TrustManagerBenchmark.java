@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of a server validating the certificate chain of a client, comparing the PKIX trust manager with and
+ * without the {@link CachingTrustManager} from {@link TrustManagerSupplier}.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TrustManagerBenchmark {
+
+    @Param({ "RSA", "EC" })
+    public String authType;
+
+    @Param({ "0", "100" })
+    public int cacheSize;
+
+    private X509Certificate[] chain;
+    private X509TrustManager trustManager;
+
+    @Setup
+    public void setup() throws Exception {
+        // The certificates in the keystores used by the server have expired and are self signed, these are issued by a
+        // CA in the trust store so the full path is validated.
+        KeyStore keyStore = load("/trusted-" + authType.toLowerCase(Locale.ENGLISH) + ".keystore");
+        Certificate[] certificateChain = keyStore.getCertificateChain("test");
+        chain = Arrays.copyOf(certificateChain, certificateChain.length, X509Certificate[].class);
+
+        KeyStore trustStore = load("/truststore.keystore");
+        trustManager = (X509TrustManager) TrustManagerSupplier.builder()
+                .setAlgorithm("PKIX")
+                .setKeyStoreSupplier(() -> trustStore)
+                .setCacheSize(cacheSize)
+                .build()
+                .get()[0];
+    }
+
+    private static KeyStore load(String resource) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = TrustManagerBenchmark.class.getResourceAsStream(resource)) {
+            keyStore.load(is, Benchmarks.PASSWORD.toCharArray());
+        }
+
+        return keyStore;
+    }
+
+    @Benchmark
+    public void checkClientTrusted() throws Exception {
+        trustManager.checkClientTrusted(chain, authType);
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission control for new connections, applied as soon as a connection is accepted so a connection over the limits
+ * is rejected before any handshake work is done for it.
+ *
+ * A connection is admitted if the number of handshakes in progress is below the cap and a token is available from the
+ * rate limit. An admitted connection counts as in progress until {@link #complete()} is called.
+ *
+ * The rate limit is a token bucket of {@code burst} tokens refilled at {@code rate} tokens per second, implemented as
+ * the equivalent generic cell rate algorithm so no refill thread or lock is needed.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class AdmissionControl {
+
+    private final int maxInProgress;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int backlog;
+
+    private final AtomicInteger inProgress = new AtomicInteger();
+    /**
+     * The theoretical arrival time of the next connection, a connection may arrive up to the tolerance before it.
+     */
+    private final AtomicLong nextArrival = new AtomicLong(System.nanoTime());
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedRate = new LongAdder();
+    private final LongAdder rejectedInProgress = new LongAdder();
+    private final LongAdder rejectedQueue = new LongAdder();
+
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    private AdmissionControl(int maxInProgress, int rate, int burst, int backlog) {
+        this.maxInProgress = maxInProgress;
+        this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.backlog = backlog;
+    }
+
+    /**
+     * Attempt to admit a new connection.
+     *
+     * @return {@code true} if admitted, the caller must then call {@link #complete()} once the handshake has finished,
+     *         {@code false} if the connection should be closed immediately.
+     */
+    boolean tryAdmit() {
+        // The cap is checked first so a connection it rejects does not use up a token of the rate limit.
+        if (inProgress.incrementAndGet() > maxInProgress && maxInProgress > 0) {
+            inProgress.decrementAndGet();
+            rejectedInProgress.increment();
+            return false;
+        }
+        if (intervalNanos > 0 && takeToken() == false) {
+            inProgress.decrementAndGet();
+            rejectedRate.increment();
+            return false;
+        }
+
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * The handshake of an admitted connection has finished, successfully or not.
+     */
+    void complete() {
+        inProgress.decrementAndGet();
+    }
+
+    /**
+     * An admitted connection could not be queued for its handshake.
+     */
+    void rejected() {
+        rejectedQueue.increment();
+        complete();
+    }
+
+    /**
+     * @return the backlog to use when binding the server socket.
+     */
+    int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Report the depth of the queue of the executor performing the handshakes, only a {@link ThreadPoolExecutor} has a
+     * queue which can be reported.
+     */
+    void setExecutor(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            queueDepth = ((ThreadPoolExecutor) executor).getQueue()::size;
+        }
+    }
+
+    /**
+     * @return a snapshot of the admission counters suitable for {@link HandshakeMetrics#setAdmission}.
+     */
+    Map<String, Long> getStatistics() {
+        Map<String, Long> result = new TreeMap<>();
+        result.put("admitted", admitted.sum());
+        result.put("rejectedRate", rejectedRate.sum());
+        result.put("rejectedInProgress", rejectedInProgress.sum());
+        result.put("rejectedQueue", rejectedQueue.sum());
+        result.put("inProgress", (long) inProgress.get());
+        result.put("queueDepth", (long) queueDepth.getAsInt());
+
+        return result;
+    }
+
+    private boolean takeToken() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = nextArrival.get();
+            if (current - now > toleranceNanos) {
+                return false;
+            }
+            long next = (current - now < 0 ? now : current) + intervalNanos;
+            if (nextArrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private int maxInProgress;
+        private int rate;
+        private int burst;
+        private int backlog = 50;
+
+        /**
+         * Set the maximum number of handshakes in progress, including those queued for the executor, {@code 0} for no
+         * limit.
+         */
+        Builder setMaxInProgress(int maxInProgress) {
+            this.maxInProgress = maxInProgress;
+
+            return this;
+        }
+
+        /**
+         * Set the maximum number of new handshakes per second, {@code 0} for no limit.
+         */
+        Builder setRate(int rate) {
+            this.rate = rate;
+
+            return this;
+        }
+
+        /**
+         * Set the number of handshakes which can be admitted at once above the rate, defaults to one second at the rate.
+         */
+        Builder setBurst(int burst) {
+            this.burst = burst;
+
+            return this;
+        }
+
+        /**
+         * Set the listen backlog of the server socket, defaults to 50 as used by {@link java.net.ServerSocket}.
+         */
+        Builder setBacklog(int backlog) {
+            this.backlog = backlog;
+
+            return this;
+        }
+
+        AdmissionControl build() {
+            if (rate < 0 || burst < 0 || maxInProgress < 0) {
+                throw new IllegalArgumentException("rate, burst and maxInProgress must not be negative");
+            }
+
+            return new AdmissionControl(maxInProgress, rate, burst > 0 ? burst : Math.max(rate, 1), backlog);
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of direct {@link ByteBuffer} instances in power of two size classes.
+ *
+ * Buffers are expected to be borrowed only while a connection has data to process and released as soon as they are
+ * empty again so an idle connection holds no buffers at all. Each size class keeps at most a fixed number of idle
+ * buffers, any further buffers released are left for the garbage collector.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class BufferPool {
+
+    private static final int MIN_SHIFT = 9;
+    private static final int MAX_SHIFT = 20;
+
+    private final int maxIdle;
+    private final SizeClass[] sizeClasses = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private final AtomicLong idleBytes = new AtomicLong();
+
+    /**
+     * Construct a new pool.
+     *
+     * @param maxIdle the maximum number of idle buffers to keep for each size class.
+     */
+    BufferPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (i + MIN_SHIFT));
+        }
+    }
+
+    /**
+     * Borrow a cleared buffer with a capacity of at least the requested size.
+     *
+     * @param size the minimum capacity required.
+     * @return a cleared direct buffer.
+     */
+    ByteBuffer acquire(int size) {
+        SizeClass sizeClass = sizeClass(size);
+        if (sizeClass == null) {
+            // Larger than any size class so not pooled.
+            misses.increment();
+            inUseBytes.addAndGet(size);
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        ByteBuffer buffer = sizeClass.idle.pollFirst();
+        if (buffer != null) {
+            sizeClass.idleCount.decrementAndGet();
+            idleBytes.addAndGet(-sizeClass.size);
+            hits.increment();
+        } else {
+            buffer = ByteBuffer.allocateDirect(sizeClass.size);
+            misses.increment();
+        }
+        inUseBytes.addAndGet(sizeClass.size);
+
+        return buffer;
+    }
+
+    /**
+     * Return a buffer previously obtained from {@link #acquire(int)}, the buffer must not be used by the caller
+     * afterwards.
+     *
+     * @param buffer the buffer to return.
+     */
+    void release(ByteBuffer buffer) {
+        inUseBytes.addAndGet(-buffer.capacity());
+        SizeClass sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass == null || sizeClass.size != buffer.capacity()) {
+            discarded.increment();
+            return;
+        }
+        if (sizeClass.idleCount.incrementAndGet() > maxIdle) {
+            sizeClass.idleCount.decrementAndGet();
+            discarded.increment();
+            return;
+        }
+
+        buffer.clear();
+        idleBytes.addAndGet(sizeClass.size);
+        // LIFO so the most recently used buffers are handed out first.
+        sizeClass.idle.offerFirst(buffer);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getInUseBytes() {
+        return inUseBytes.get();
+    }
+
+    long getIdleBytes() {
+        return idleBytes.get();
+    }
+
+    /**
+     * @return a snapshot of the pool statistics suitable for {@link HandshakeMetrics#setBufferPool}.
+     */
+    Map<String, Long> getStatistics() {
+        Map<String, Long> result = new TreeMap<>();
+        result.put("hits", getHits());
+        result.put("misses", getMisses());
+        result.put("discarded", discarded.sum());
+        result.put("inUseBytes", getInUseBytes());
+        result.put("idleBytes", getIdleBytes());
+        result.put("footprintBytes", getInUseBytes() + getIdleBytes());
+
+        return result;
+    }
+
+    private SizeClass sizeClass(int size) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+        return shift > MAX_SHIFT ? null : sizeClasses[shift - MIN_SHIFT];
+    }
+
+    private static class SizeClass {
+
+        private final int size;
+        private final ConcurrentLinkedDeque<ByteBuffer> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link Supplier} of a {@link KeyStore} which caches the loaded {@link KeyStore} and only reloads it when the file
+ * it was loaded from changes.
+ *
+ * The file is only checked once the check interval has elapsed since the previous check, if the modification time or
+ * size differ the content is hashed and the {@link KeyStore} is only reloaded if the hash differs.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class CachingKeyStoreSupplier implements Supplier<KeyStore> {
+
+    private final Supplier<KeyStore> delegate;
+    private final Path path;
+    private final long checkIntervalNanos;
+
+    private volatile Loaded loaded;
+    private volatile long nextCheck;
+
+    CachingKeyStoreSupplier(final Supplier<KeyStore> delegate, final String path, final long checkIntervalMillis) {
+        this.delegate = delegate;
+        this.path = path != null ? Paths.get(path) : null;
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+    }
+
+    @Override
+    public KeyStore get() {
+        Loaded loaded = this.loaded;
+        if (loaded != null && (path == null || System.nanoTime() - nextCheck < 0)) {
+            return loaded.keyStore;
+        }
+
+        return check(false).keyStore;
+    }
+
+    /**
+     * Get the generation of the cached {@link KeyStore}, this is incremented each time the {@link KeyStore} is reloaded.
+     */
+    long getGeneration() {
+        Loaded loaded = this.loaded;
+        return loaded != null ? loaded.generation : 0;
+    }
+
+    /**
+     * Check the file for changes now regardless of when it was last checked.
+     *
+     * @return {@code true} if the {@link KeyStore} was reloaded.
+     */
+    boolean reloadIfChanged() {
+        long generation = getGeneration();
+        return check(true).generation != generation;
+    }
+
+    private synchronized Loaded check(boolean force) {
+        Loaded current = loaded;
+        if (force == false && current != null && (path == null || System.nanoTime() - nextCheck < 0)) {
+            // Already checked by another thread.
+            return current;
+        }
+
+        try {
+            if (current == null) {
+                current = load(0);
+            } else if (path != null) {
+                long lastModified = Files.getLastModifiedTime(path).toMillis();
+                long size = Files.size(path);
+                if (lastModified != current.lastModified || size != current.size) {
+                    byte[] digest = digest(path);
+                    if (Arrays.equals(digest, current.digest)) {
+                        current = new Loaded(current.keyStore, lastModified, size, digest, current.generation);
+                    } else {
+                        current = load(current.generation + 1);
+                        System.out.println(String.format("Reloaded KeyStore '%s'", path));
+                    }
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            if (current == null) {
+                throw new IllegalStateException(e);
+            }
+            // Keep using the KeyStore already loaded, the file may be part way through being replaced.
+            System.out.println(String.format("Unable to check KeyStore '%s' for changes (%s)", path, e.getMessage()));
+        }
+
+        loaded = current;
+        nextCheck = System.nanoTime() + checkIntervalNanos;
+
+        return current;
+    }
+
+    private Loaded load(long generation) throws IOException {
+        if (path == null) {
+            return new Loaded(delegate.get(), 0, 0, null, generation);
+        }
+
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        long size = Files.size(path);
+        byte[] digest = digest(path);
+
+        return new Loaded(delegate.get(), lastModified, size, digest, generation);
+    }
+
+    private static byte[] digest(Path path) throws IOException {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            try (InputStream is = Files.newInputStream(path)) {
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    messageDigest.update(buffer, 0, read);
+                }
+            }
+
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Loaded {
+
+        private final KeyStore keyStore;
+        private final long lastModified;
+        private final long size;
+        private final byte[] digest;
+        private final long generation;
+
+        Loaded(KeyStore keyStore, long lastModified, long size, byte[] digest, long generation) {
+            this.keyStore = keyStore;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.digest = digest;
+            this.generation = generation;
+        }
+
+    }
+
+}
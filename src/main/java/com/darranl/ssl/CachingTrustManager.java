@@ -0,0 +1,298 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.net.Socket;
+import java.security.AlgorithmConstraints;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * A {@link X509ExtendedTrustManager} which remembers the certificate chains the wrapped trust manager has accepted so
+ * the same chain presented again is not re-validated.
+ *
+ * Entries are keyed on the encoded form of the whole chain, the auth type and whether the client or server was
+ * being checked. For the checks of a connection the key also holds the constraints the wrapped trust manager applies for
+ * that connection, the negotiated protocol, the signature algorithms of the handshake and any algorithm constraints, so
+ * a chain is only accepted from the cache by a check which would apply the same constraints. An entry expires after the configured timeout or when any certificate in the chain expires,
+ * whichever is sooner. Once the cache is full a new chain replaces an existing entry. Failures are never cached. Where
+ * endpoint identification is enabled the result also depends on the peer host so the check is always passed to the
+ * wrapped trust manager.
+ *
+ * As the cache belongs to this instance, trust managers created from an updated trust store start with an empty cache.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class CachingTrustManager extends X509ExtendedTrustManager {
+
+    private static final long PURGE_INTERVAL = 1000;
+
+    private final X509ExtendedTrustManager wrapped;
+    private final int maxEntries;
+    private final long timeout;
+
+    private final ConcurrentMap<ChainKey, Long> accepted = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * The earliest time the next purge of expired entries may run.
+     */
+    private final AtomicLong nextPurge = new AtomicLong();
+
+    /**
+     * Construct a new caching trust manager.
+     *
+     * @param wrapped the trust manager performing the actual validation.
+     * @param maxEntries the maximum number of accepted chains to remember.
+     * @param timeout the time in milliseconds an accepted chain is remembered.
+     */
+    CachingTrustManager(X509ExtendedTrustManager wrapped, int maxEntries, long timeout) {
+        this.wrapped = wrapped;
+        this.maxEntries = maxEntries;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        check(true, chain, authType, null, () -> wrapped.checkClientTrusted(chain, authType));
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        check(false, chain, authType, null, () -> wrapped.checkServerTrusted(chain, authType));
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        SSLSocket sslSocket = socket instanceof SSLSocket ? (SSLSocket) socket : null;
+        SSLParameters parameters = sslSocket != null ? sslSocket.getSSLParameters() : null;
+        if (identifiesEndpoint(parameters)) {
+            wrapped.checkClientTrusted(chain, authType, socket);
+        } else {
+            check(true, chain, authType, constraints(sslSocket != null ? sslSocket.getHandshakeSession() : null, parameters),
+                    () -> wrapped.checkClientTrusted(chain, authType, socket));
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        SSLSocket sslSocket = socket instanceof SSLSocket ? (SSLSocket) socket : null;
+        SSLParameters parameters = sslSocket != null ? sslSocket.getSSLParameters() : null;
+        if (identifiesEndpoint(parameters)) {
+            wrapped.checkServerTrusted(chain, authType, socket);
+        } else {
+            check(false, chain, authType, constraints(sslSocket != null ? sslSocket.getHandshakeSession() : null, parameters),
+                    () -> wrapped.checkServerTrusted(chain, authType, socket));
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        SSLParameters parameters = engine != null ? engine.getSSLParameters() : null;
+        if (identifiesEndpoint(parameters)) {
+            wrapped.checkClientTrusted(chain, authType, engine);
+        } else {
+            check(true, chain, authType, constraints(engine != null ? engine.getHandshakeSession() : null, parameters),
+                    () -> wrapped.checkClientTrusted(chain, authType, engine));
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        SSLParameters parameters = engine != null ? engine.getSSLParameters() : null;
+        if (identifiesEndpoint(parameters)) {
+            wrapped.checkServerTrusted(chain, authType, engine);
+        } else {
+            check(false, chain, authType, constraints(engine != null ? engine.getHandshakeSession() : null, parameters),
+                    () -> wrapped.checkServerTrusted(chain, authType, engine));
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return wrapped.getAcceptedIssuers();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @param constraints the constraints applied for the connection being checked, {@code null} for the checks without a
+     *        connection.
+     */
+    private void check(boolean client, X509Certificate[] chain, String authType, List<Object> constraints, Check check) throws CertificateException {
+        ChainKey key = chain != null && chain.length > 0 && authType != null ? key(client, chain, authType, constraints) : null;
+        if (key == null) {
+            check.run();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Long expiry = accepted.get(key);
+        if (expiry != null) {
+            if (now < expiry) {
+                hits.increment();
+                return;
+            }
+            accepted.remove(key, expiry);
+        }
+
+        misses.increment();
+        check.run();
+        remember(key, Math.min(now + timeout, notAfter(chain)), now);
+    }
+
+    /**
+     * Remember an accepted chain, if the cache is full expired entries are purged, at most once per purge interval so a
+     * cache full of unexpired entries does not scan on every miss, then arbitrary entries are evicted to make room.
+     */
+    private void remember(ChainKey key, long expiry, long now) {
+        if (accepted.size() >= maxEntries) {
+            long purge = nextPurge.get();
+            if (now >= purge && nextPurge.compareAndSet(purge, now + PURGE_INTERVAL)) {
+                accepted.values().removeIf(e -> e <= now);
+            }
+            Iterator<ChainKey> iterator = accepted.keySet().iterator();
+            while (accepted.size() >= maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        accepted.put(key, expiry);
+    }
+
+    private static ChainKey key(boolean client, X509Certificate[] chain, String authType, List<Object> constraints) {
+        byte[][] encoded = new byte[chain.length][];
+        try {
+            for (int i = 0; i < chain.length; i++) {
+                encoded[i] = chain[i].getEncoded();
+            }
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+
+        return new ChainKey(client, authType, constraints, encoded);
+    }
+
+    private static long notAfter(X509Certificate[] chain) {
+        long notAfter = Long.MAX_VALUE;
+        for (X509Certificate current : chain) {
+            notAfter = Math.min(notAfter, current.getNotAfter().getTime());
+        }
+
+        return notAfter;
+    }
+
+    private static boolean identifiesEndpoint(SSLParameters parameters) {
+        String endpointIdentificationAlgorithm = parameters != null ? parameters.getEndpointIdentificationAlgorithm() : null;
+
+        return endpointIdentificationAlgorithm != null && endpointIdentificationAlgorithm.length() > 0;
+    }
+
+    /**
+     * The values of a connection the wrapped trust manager uses to constrain the algorithms of an acceptable chain.
+     */
+    private static List<Object> constraints(SSLSession handshakeSession, SSLParameters parameters) {
+        String protocol = null;
+        List<String> localAlgorithms = null;
+        List<String> peerAlgorithms = null;
+        if (handshakeSession != null) {
+            protocol = handshakeSession.getProtocol();
+            if (handshakeSession instanceof ExtendedSSLSession) {
+                localAlgorithms = Arrays.asList(((ExtendedSSLSession) handshakeSession).getLocalSupportedSignatureAlgorithms());
+                peerAlgorithms = Arrays.asList(((ExtendedSSLSession) handshakeSession).getPeerSupportedSignatureAlgorithms());
+            }
+        }
+        AlgorithmConstraints algorithmConstraints = parameters != null ? parameters.getAlgorithmConstraints() : null;
+
+        return Arrays.asList(protocol, localAlgorithms, peerAlgorithms, algorithmConstraints);
+    }
+
+    @FunctionalInterface
+    private interface Check {
+
+        void run() throws CertificateException;
+
+    }
+
+    /**
+     * Key for an accepted chain, the encoded chain is compared directly as hashing it with a message digest costs
+     * more than the comparison.
+     */
+    private static class ChainKey {
+
+        private final boolean client;
+        private final String authType;
+        private final List<Object> constraints;
+        private final byte[][] encoded;
+        private final int hashCode;
+
+        ChainKey(boolean client, String authType, List<Object> constraints, byte[][] encoded) {
+            this.client = client;
+            this.authType = authType;
+            this.constraints = constraints;
+            this.encoded = encoded;
+            this.hashCode = ((Arrays.deepHashCode(encoded) * 31 + authType.hashCode()) * 31 + Objects.hashCode(constraints)) * 31 + (client ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ChainKey == false) {
+                return false;
+            }
+            ChainKey other = (ChainKey) obj;
+
+            return client == other.client && authType.equals(other.authType) && Objects.equals(constraints, other.constraints)
+                    && Arrays.deepEquals(encoded, other.encoded);
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A pool of established TLS connections for each target so a client talking to the same server repeatedly only pays
+ * for the handshake once per connection rather than once per exchange.
+ *
+ * A connection is leased for one exchange and returned by closing the {@link Lease}. Idle connections are handed out
+ * most recently used first, so the fewest connections possible stay warm, and are closed once they have been idle for
+ * longer than the idle timeout. Before an idle connection is leased it is checked that the socket is still open and
+ * that nothing other than post handshake messages, such as TLSv1.3 session tickets, has been received while it was
+ * idle. A request / response protocol sends nothing unsolicited so any data, usually a close_notify alert, means the
+ * server is closing the connection.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class ConnectionPool implements Closeable {
+
+    private static final int HEALTH_CHECK_TIMEOUT = 1;
+
+    /**
+     * Opens the connections for the pool.
+     */
+    @FunctionalInterface
+    interface Connector {
+
+        /**
+         * Connect the socket to the target, layer a TLS connection over it and complete the handshake.
+         */
+        SSLSocket connect(Socket socket, InetSocketAddress target) throws IOException;
+
+    }
+
+    private final Connector connector;
+    private final int maxIdle;
+    private final long idleTimeoutNanos;
+    private final ConcurrentMap<InetSocketAddress, Target> targets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * @param connector opens new connections.
+     * @param maxIdle the maximum number of idle connections kept for each target.
+     * @param idleTimeoutMillis how long a connection can be idle before it is closed, {@code 0} for no limit.
+     */
+    ConnectionPool(Connector connector, int maxIdle, long idleTimeoutMillis) {
+        this.connector = connector;
+        this.maxIdle = maxIdle;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        if (idleTimeoutMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(idleTimeoutMillis / 2, 10);
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Lease a connection to the target, an idle connection is used if one is available otherwise a new connection is
+     * opened.
+     */
+    Lease lease(InetSocketAddress target) throws IOException {
+        Target pooled = target(target);
+        long now = System.nanoTime();
+        Idle idle;
+        while ((idle = pooled.connections.pollFirst()) != null) {
+            pooled.idleCount.decrementAndGet();
+            if (idleTimeoutNanos > 0 && now - idle.returnedNanos > idleTimeoutNanos) {
+                close(idle.socket);
+                evicted.increment();
+            } else if (healthy(idle)) {
+                reused.increment();
+                return new Lease(pooled, idle.raw, idle.socket, true);
+            } else {
+                stale.increment();
+                close(idle.socket);
+            }
+        }
+
+        Socket raw = new Socket();
+        SSLSocket socket;
+        try {
+            socket = connector.connect(raw, target);
+        } catch (IOException | RuntimeException e) {
+            close(raw);
+            throw e;
+        }
+        connected.increment();
+
+        return new Lease(pooled, raw, socket, false);
+    }
+
+    /**
+     * Close any connections which have been idle for longer than the idle timeout.
+     */
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (Target current : targets.values()) {
+            Iterator<Idle> iterator = current.connections.descendingIterator();
+            while (iterator.hasNext()) {
+                Idle idle = iterator.next();
+                // Only one of a concurrent lease and eviction can remove the connection.
+                if (now - idle.returnedNanos > idleTimeoutNanos && current.connections.removeFirstOccurrence(idle)) {
+                    current.idleCount.decrementAndGet();
+                    close(idle.socket);
+                    evicted.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the counts of connections opened, reused, found to be stale, evicted as idle too long or discarded as the pool
+     * was full along with the number currently idle.
+     */
+    Map<String, Long> getStatistics() {
+        long idle = 0;
+        for (Target current : targets.values()) {
+            idle += current.idleCount.get();
+        }
+
+        Map<String, Long> result = new TreeMap<>();
+        result.put("connected", connected.sum());
+        result.put("reused", reused.sum());
+        result.put("stale", stale.sum());
+        result.put("evicted", evicted.sum());
+        result.put("discarded", discarded.sum());
+        result.put("idle", idle);
+
+        return result;
+    }
+
+    /**
+     * Close all idle connections, connections currently leased are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdown();
+        }
+        for (Target current : targets.values()) {
+            current.closed = true;
+            Idle idle;
+            while ((idle = current.connections.pollFirst()) != null) {
+                current.idleCount.decrementAndGet();
+                close(idle.socket);
+            }
+        }
+    }
+
+    private Target target(InetSocketAddress target) {
+        Target pooled = targets.get(target);
+        if (pooled == null) {
+            pooled = targets.computeIfAbsent(target, t -> new Target());
+        }
+
+        return pooled;
+    }
+
+    private void release(Target target, Socket raw, SSLSocket socket) {
+        if (target.closed || socket.isClosed()) {
+            close(socket);
+            return;
+        }
+        if (target.idleCount.incrementAndGet() > maxIdle) {
+            target.idleCount.decrementAndGet();
+            discarded.increment();
+            close(socket);
+            return;
+        }
+        target.connections.offerFirst(new Idle(raw, socket, System.nanoTime()));
+    }
+
+    /**
+     * The TLS layer does not read from the network until asked so the underlying socket is checked first, this does not
+     * block. If anything has been received it is read through the TLS layer with a short timeout, post handshake
+     * messages are consumed and the read times out whereas application data or a close_notify alert is returned.
+     */
+    private static boolean healthy(Idle idle) {
+        try {
+            if (idle.socket.isClosed() || idle.raw.isInputShutdown()) {
+                return false;
+            }
+            if (idle.raw.getInputStream().available() == 0) {
+                return true;
+            }
+
+            int timeout = idle.socket.getSoTimeout();
+            idle.socket.setSoTimeout(HEALTH_CHECK_TIMEOUT);
+            try {
+                idle.socket.getInputStream().read();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                idle.socket.setSoTimeout(timeout);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * A connection leased from the pool, closing the lease returns the connection unless it has been invalidated.
+     */
+    final class Lease implements Closeable {
+
+        private final Target target;
+        private final Socket raw;
+        private final SSLSocket socket;
+        private final boolean reused;
+        private boolean done;
+
+        private Lease(Target target, Socket raw, SSLSocket socket, boolean reused) {
+            this.target = target;
+            this.raw = raw;
+            this.socket = socket;
+            this.reused = reused;
+        }
+
+        SSLSocket getSocket() {
+            return socket;
+        }
+
+        /**
+         * @return {@code true} if the connection was idle in the pool, {@code false} if it was opened for this lease.
+         */
+        boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * Close the connection instead of returning it to the pool, this should be called if the exchange failed.
+         */
+        void invalidate() {
+            if (done == false) {
+                done = true;
+                ConnectionPool.close(socket);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (done == false) {
+                done = true;
+                release(target, raw, socket);
+            }
+        }
+
+    }
+
+    private static class Target {
+
+        private final Deque<Idle> connections = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private volatile boolean closed;
+
+    }
+
+    private static class Idle {
+
+        private final Socket raw;
+        private final SSLSocket socket;
+        private final long returnedNanos;
+
+        Idle(Socket raw, SSLSocket socket, long returnedNanos) {
+            this.raw = raw;
+            this.socket = socket;
+            this.returnedNanos = returnedNanos;
+        }
+
+    }
+
+}
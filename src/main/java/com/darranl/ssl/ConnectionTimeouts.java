@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The handshake and idle timeouts applied to server connections.
+ *
+ * The handshake timeout is a deadline from the connection being accepted to the handshake completing, the idle timeout
+ * is the longest time allowed without receiving any data from the client once the handshake is complete. Timeouts are scheduled on a shared
+ * {@link TimerWheel} so the cost of scheduling and cancelling one does not grow with the number of connections.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class ConnectionTimeouts {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    private final long handshakeTimeout;
+    private final int idleTimeout;
+    private final TimerWheel timerWheel;
+
+    private final LongAdder handshakeTimeouts = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+
+    /**
+     * @param handshakeTimeout the handshake timeout in milliseconds, {@code 0} for none.
+     * @param idleTimeout the idle timeout in milliseconds, {@code 0} for none.
+     */
+    ConnectionTimeouts(long handshakeTimeout, int idleTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+        this.idleTimeout = idleTimeout;
+        this.timerWheel = handshakeTimeout > 0 || idleTimeout > 0 ? new TimerWheel(TICK_MILLIS, WHEEL_SIZE, "connection-timeouts") : null;
+    }
+
+    long getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Schedule the handshake deadline of a new connection.
+     *
+     * @param onExpiry called by the timer thread if the deadline passes, this must not block.
+     * @return the timeout to cancel once the handshake completes or {@code null} if there is no handshake timeout.
+     */
+    TimerWheel.Timeout handshakeDeadline(Runnable onExpiry) {
+        return handshakeTimeout > 0 ? timerWheel.schedule(onExpiry, handshakeTimeout) : null;
+    }
+
+    /**
+     * Schedule a task after the idle timeout.
+     *
+     * @param task called by the timer thread after the delay, this must not block.
+     * @param delayMillis the delay, at most the idle timeout.
+     * @return the timeout or {@code null} if there is no idle timeout.
+     */
+    TimerWheel.Timeout idleCheck(Runnable task, long delayMillis) {
+        return idleTimeout > 0 ? timerWheel.schedule(task, delayMillis) : null;
+    }
+
+    void handshakeTimedOut() {
+        handshakeTimeouts.increment();
+    }
+
+    void idleTimedOut() {
+        idleTimeouts.increment();
+    }
+
+    /**
+     * @return a snapshot of the timeout counters suitable for {@link HandshakeMetrics#setTimeouts}.
+     */
+    Map<String, Long> getStatistics() {
+        Map<String, Long> result = new TreeMap<>();
+        result.put("handshakeTimeouts", handshakeTimeouts.sum());
+        result.put("idleTimeouts", idleTimeouts.sum());
+
+        return result;
+    }
+
+    static void cancel(TimerWheel.Timeout timeout) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+}
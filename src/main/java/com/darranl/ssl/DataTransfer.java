@@ -0,0 +1,402 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Streams data over an established {@link SSLSocket} to measure the throughput of the record layer.
+ *
+ * The {@link Mode} is named from the perspective of the server, the client performs the opposite side of the transfer.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class DataTransfer {
+
+    enum Mode {
+        /**
+         * No data is transferred, the connection is closed after the handshake.
+         */
+        NONE,
+        /**
+         * The server writes back everything it reads until the client closes the connection.
+         */
+        ECHO,
+        /**
+         * The client announces the number of bytes it will write, the server reads and discards them then acknowledges
+         * the number read so the time measured by the client includes delivery rather than only filling the socket send
+         * buffer.
+         */
+        SINK,
+        /**
+         * The server writes the configured number of bytes then closes the connection.
+         */
+        SOURCE,
+        /**
+         * The server answers each length prefixed request with a response of the same length until the client closes
+         * the connection, the client pipelines requests of the configured message size.
+         */
+        FRAMED
+    }
+
+    private static final int READ_SIZE = 16384;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final Mode mode;
+    private final long bytes;
+    private final byte[] writeBuffer;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final int messageSize;
+    private final int pipelineDepth;
+
+    private final LongAdder totalBytes = new LongAdder();
+    private final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+
+    private DataTransfer(final Mode mode, final long bytes, final int writeSize, final int sendBufferSize, final int receiveBufferSize,
+            final int messageSize, final int pipelineDepth) {
+        this.mode = mode;
+        this.bytes = bytes;
+        this.writeBuffer = new byte[writeSize];
+        new Random().nextBytes(writeBuffer);
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.messageSize = messageSize;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    boolean isEnabled() {
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * Apply the socket buffer sizes to a client socket, this should be called before the socket is connected.
+     */
+    void configure(Socket socket) throws IOException {
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Apply the receive buffer size to a server socket so it is inherited by accepted sockets, this should be called
+     * before the server socket is bound.
+     */
+    void configure(ServerSocket serverSocket) throws IOException {
+        if (receiveBufferSize > 0) {
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Perform the server side of the transfer.
+     */
+    Result serve(SSLSocket socket) throws IOException {
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+
+        long start = System.nanoTime();
+        long transferred = 0;
+        switch (mode) {
+            case ECHO:
+                transferred = echo(socket);
+                break;
+            case SINK:
+                transferred = sink(socket);
+                break;
+            case SOURCE:
+                transferred = write(socket.getOutputStream(), bytes);
+                break;
+            case FRAMED:
+                transferred = FramedProtocol.serve(socket);
+                break;
+            default:
+        }
+
+        return record(transferred, start, System.nanoTime());
+    }
+
+    /**
+     * Perform the client side of the transfer.
+     */
+    Result drive(SSLSocket socket) throws IOException {
+        long start = System.nanoTime();
+        long transferred = 0;
+        switch (mode) {
+            case ECHO:
+                transferred = writeAndRead(socket);
+                break;
+            case SINK:
+                transferred = writeAndAwait(socket);
+                break;
+            case SOURCE:
+                transferred = read(socket.getInputStream(), Long.MAX_VALUE);
+                break;
+            case FRAMED:
+                // The configured number of bytes in each direction split into messages.
+                transferred = FramedProtocol.drive(socket, pipelineDepth, messageSize, Math.max(bytes / messageSize, 1), Long.MAX_VALUE).getBytes();
+                break;
+            default:
+        }
+
+        return record(transferred, start, System.nanoTime());
+    }
+
+    /**
+     * A summary of the throughput across all connections, measured from the first transfer starting to the last
+     * transfer ending.
+     */
+    String aggregate() {
+        long total = totalBytes.sum();
+        long elapsed = lastEnd.get() - firstStart.get();
+
+        return String.format("Aggregate transferred %d bytes %.1f MB/s", total, elapsed > 0 ? megabytesPerSecond(total, elapsed) : 0.0);
+    }
+
+    private long echo(SSLSocket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        byte[] buffer = new byte[Math.max(READ_SIZE, writeBuffer.length)];
+
+        long transferred = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+            transferred += read * 2L;
+        }
+
+        return transferred;
+    }
+
+    private long sink(SSLSocket socket) throws IOException {
+        long expected = new DataInputStream(socket.getInputStream()).readLong();
+        long transferred = read(socket.getInputStream(), expected);
+
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeLong(transferred);
+        out.flush();
+
+        return transferred;
+    }
+
+    private long writeAndAwait(SSLSocket socket) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeLong(bytes);
+        write(out, bytes);
+
+        long acknowledged = new DataInputStream(socket.getInputStream()).readLong();
+        if (acknowledged != bytes) {
+            throw new IOException(String.format("Server acknowledged %d of %d bytes", acknowledged, bytes));
+        }
+
+        return bytes;
+    }
+
+    private long writeAndRead(SSLSocket socket) throws IOException {
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                write(socket.getOutputStream(), bytes);
+            } catch (IOException e) {
+                writeFailure.set(e);
+            }
+        }, "echo-writer");
+        writer.start();
+
+        long transferred = read(socket.getInputStream(), bytes);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+
+        return transferred + bytes;
+    }
+
+    private long write(OutputStream out, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, writeBuffer.length);
+            out.write(writeBuffer, 0, length);
+            remaining -= length;
+        }
+        out.flush();
+
+        return count;
+    }
+
+    private long read(InputStream in, long limit) throws IOException {
+        byte[] buffer = new byte[READ_SIZE];
+
+        long transferred = 0;
+        int read;
+        while (transferred < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - transferred))) > 0) {
+            transferred += read;
+        }
+
+        return transferred;
+    }
+
+    private Result record(long transferred, long start, long end) {
+        totalBytes.add(transferred);
+        firstStart.accumulateAndGet(start, Math::min);
+        lastEnd.accumulateAndGet(end, Math::max);
+
+        return new Result(transferred, end - start);
+    }
+
+    /**
+     * The throughput in MB/s, where a megabyte is 1048576 bytes, used by all modes reporting throughput.
+     */
+    static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / BYTES_PER_MEGABYTE / (nanos / 1e9);
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private Mode mode = Mode.NONE;
+        private long bytes = 100 * 1024 * 1024;
+        private int writeSize = 16384;
+        private int sendBufferSize;
+        private int receiveBufferSize;
+        private int messageSize = 64;
+        private int pipelineDepth = 1;
+
+        Builder setMode(final Mode mode) {
+            this.mode = mode;
+
+            return this;
+        }
+
+        /**
+         * Set the number of bytes written in each direction.
+         */
+        Builder setBytes(final long bytes) {
+            this.bytes = bytes;
+
+            return this;
+        }
+
+        /**
+         * Set the size of each write to the socket, each write is encrypted as one or more TLS records.
+         */
+        Builder setWriteSize(final int writeSize) {
+            this.writeSize = writeSize;
+
+            return this;
+        }
+
+        /**
+         * Set the socket send buffer size (SO_SNDBUF), {@code 0} leaves the system default.
+         */
+        Builder setSendBufferSize(final int sendBufferSize) {
+            this.sendBufferSize = sendBufferSize;
+
+            return this;
+        }
+
+        /**
+         * Set the socket receive buffer size (SO_RCVBUF), {@code 0} leaves the system default.
+         */
+        Builder setReceiveBufferSize(final int receiveBufferSize) {
+            this.receiveBufferSize = receiveBufferSize;
+
+            return this;
+        }
+
+        /**
+         * Set the payload size of each request and response for {@link Mode#FRAMED}.
+         */
+        Builder setMessageSize(final int messageSize) {
+            this.messageSize = messageSize;
+
+            return this;
+        }
+
+        /**
+         * Set the maximum number of requests in flight on each connection for {@link Mode#FRAMED}.
+         */
+        Builder setPipelineDepth(final int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+
+            return this;
+        }
+
+        DataTransfer build() {
+            if (writeSize < 1) {
+                throw new IllegalArgumentException("writeSize must be at least 1");
+            }
+            if (messageSize < 1 || pipelineDepth < 1) {
+                throw new IllegalArgumentException("messageSize and pipelineDepth must be at least 1");
+            }
+
+            return new DataTransfer(mode, bytes, writeSize, sendBufferSize, receiveBufferSize, messageSize, pipelineDepth);
+        }
+
+    }
+
+    /**
+     * The result of a transfer over a single connection.
+     */
+    static class Result {
+
+        private final long bytes;
+        private final long nanos;
+
+        Result(long bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Transferred %d bytes in %dms %.1f MB/s", bytes, nanos / 1000000, nanos > 0 ? megabytesPerSecond(bytes, nanos) : 0.0);
+        }
+
+    }
+
+}
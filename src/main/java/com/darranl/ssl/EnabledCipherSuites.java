@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import javax.net.ssl.SSLContext;
+
+import org.wildfly.security.ssl.CipherSuiteSelector;
+
+/**
+ * The cipher suites to enable on server connections, evaluated from a {@link CipherSuiteSelector} string against the
+ * cipher suites supported by the {@link SSLContext}.
+ *
+ * The result is held for the most recent {@link SSLContext} so it is only evaluated again if the context is replaced.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class EnabledCipherSuites {
+
+    private final CipherSuiteSelector cipherSuiteSelector;
+
+    private volatile Evaluated evaluated;
+
+    /**
+     * @param ciphers the cipher selector string, may be {@code null} or empty to use the defaults of the context.
+     */
+    EnabledCipherSuites(String ciphers) {
+        this.cipherSuiteSelector = ciphers != null && ciphers.length() > 0 ? CipherSuiteSelector.fromString(ciphers) : null;
+    }
+
+    /**
+     * Get the cipher suites to enable for the given context.
+     *
+     * @return the cipher suites to enable or {@code null} if the defaults of the context should be used.
+     */
+    String[] get(SSLContext sslContext) {
+        if (cipherSuiteSelector == null) {
+            return null;
+        }
+
+        Evaluated evaluated = this.evaluated;
+        if (evaluated == null || evaluated.sslContext != sslContext) {
+            String[] enabledCiphers = cipherSuiteSelector.evaluate(sslContext.getSupportedSSLParameters().getCipherSuites());
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < enabledCiphers.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(enabledCiphers[i]);
+            }
+            sb.append("}");
+            System.out.println(String.format("Enabled Ciphers '%s'", sb.toString()));
+
+            evaluated = new Evaluated(sslContext, enabledCiphers);
+            this.evaluated = evaluated;
+        }
+
+        return evaluated.enabledCiphers;
+    }
+
+    private static class Evaluated {
+
+        private final SSLContext sslContext;
+        private final String[] enabledCiphers;
+
+        Evaluated(SSLContext sslContext, String[] enabledCiphers) {
+            this.sslContext = sslContext;
+            this.enabledCiphers = enabledCiphers;
+        }
+
+    }
+
+}
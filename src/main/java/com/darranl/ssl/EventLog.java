@@ -0,0 +1,297 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A log of connection and handshake events which are written to a preallocated ring buffer by the threads handling the
+ * connections and formatted and written out by a single background thread.
+ *
+ * Logging an event does not take a lock, format a message or perform I/O. Where the buffer is full the event is
+ * dropped and counted rather than blocking the caller. The high volume events, such as each successful handshake, can
+ * be sampled so only one in N is logged, failures are always logged.
+ *
+ * Each event is written as a single line of the form {@code <timestamp> <TYPE> <field>=<value> ...}.
+ *
+ * The writer thread parks while there is nothing to write and is only unparked by a producer which finds it parked, so
+ * an idle log costs nothing and a busy log does not unpark on every event. {@link #close()} writes out and flushes the
+ * events already logged.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class EventLog {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    enum Type {
+
+        ACCEPTED(true, "host"),
+        HANDSHAKE(true, "host", "valid", "cipher"),
+        DATA(true, "host", "cipher", "result"),
+        ALIAS(true, "keyType", "alias"),
+        FILE(true, "host", "name", "bytes"),
+        REJECTED(false, "host", "reason"),
+        FAILED(false, "host", "reason");
+
+        private final boolean sampled;
+        private final String[] fields;
+
+        Type(boolean sampled, String... fields) {
+            this.sampled = sampled;
+            this.fields = fields;
+        }
+
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int sampleRate;
+    private final Writer writer;
+    private final Thread thread;
+
+    /**
+     * The sequence of the next slot to be claimed by a producer.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence of the next slot to be written out, only updated by the writer thread.
+     */
+    private volatile long tail;
+    /**
+     * Set by the writer thread before it parks, producers unpark it after publishing an event if set.
+     */
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    EventLog(int capacity, int sampleRate, Writer writer) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.sampleRate = sampleRate;
+        this.writer = writer;
+
+        this.thread = new Thread(this::drain, "event-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void log(Type type, String first) {
+        log(type, first, null, null);
+    }
+
+    void log(Type type, String first, String second) {
+        log(type, first, second, null);
+    }
+
+    /**
+     * Log an event, the values correspond to the fields of the type.
+     */
+    void log(Type type, String first, String second, String third) {
+        if (type.sampled && sampleRate != 1) {
+            if (sampleRate <= 0 || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+                sampledOut.increment();
+                return;
+            }
+        }
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (head.compareAndSet(sequence, sequence + 1) == false);
+
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.type = type;
+        slot.first = first;
+        slot.second = second;
+        slot.third = third;
+        // Publishes the values above to the writer thread.
+        slot.sequence = sequence + 1;
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Write out and flush the events already logged, then stop the writer thread. Events logged afterwards are not
+     * written.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the counts of events written, dropped as the buffer was full and not logged due to sampling.
+     */
+    Map<String, Long> getStatistics() {
+        Map<String, Long> result = new TreeMap<>();
+        result.put("written", written.sum());
+        result.put("dropped", dropped.sum());
+        result.put("sampled", sampledOut.sum());
+        result.put("errors", errors.sum());
+
+        return result;
+    }
+
+    private void drain() {
+        StringBuilder sb = new StringBuilder(256);
+        long next = tail;
+        boolean unflushed = false;
+        while (true) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.sequence != next + 1) {
+                if (unflushed) {
+                    try {
+                        writer.flush();
+                    } catch (IOException e) {
+                        errors.increment();
+                    }
+                    unflushed = false;
+                }
+                if (closed) {
+                    return;
+                }
+                parked = true;
+                // Checked again as a producer which published before seeing the flag set will not unpark.
+                if (slot.sequence != next + 1 && closed == false) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                parked = false;
+                continue;
+            }
+
+            sb.setLength(0);
+            sb.append(Instant.ofEpochMilli(slot.timeMillis)).append(' ').append(slot.type);
+            append(sb, slot.type, 0, slot.first);
+            append(sb, slot.type, 1, slot.second);
+            append(sb, slot.type, 2, slot.third);
+            sb.append(System.lineSeparator());
+            slot.first = slot.second = slot.third = null;
+            // The slot can be reused once the tail has moved past it.
+            tail = ++next;
+
+            try {
+                writer.append(sb);
+                written.increment();
+                unflushed = true;
+            } catch (IOException e) {
+                errors.increment();
+            }
+        }
+    }
+
+    private static void append(StringBuilder sb, Type type, int field, String value) {
+        if (field < type.fields.length) {
+            sb.append(' ').append(type.fields[field]).append('=').append(value);
+        }
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private int capacity = 8192;
+        private int sampleRate = 1;
+        private String path;
+
+        /**
+         * Set the number of events which can be waiting to be written, rounded up to a power of two.
+         */
+        Builder setCapacity(int capacity) {
+            this.capacity = capacity;
+
+            return this;
+        }
+
+        /**
+         * Set the rate at which sampled events are logged, one in every {@code sampleRate}, {@code 0} disables them.
+         */
+        Builder setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+
+            return this;
+        }
+
+        /**
+         * Set the file the events are appended to, if not set they are written to {@code System.out}.
+         */
+        Builder setPath(String path) {
+            this.path = path;
+
+            return this;
+        }
+
+        EventLog build() throws IOException {
+            Writer writer = path != null
+                    ? Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+            return new EventLog(capacity, sampleRate, writer);
+        }
+
+    }
+
+    private static class Slot {
+
+        private volatile long sequence;
+        private long timeMillis;
+        private Type type;
+        private String first;
+        private String second;
+        private String third;
+
+    }
+
+}
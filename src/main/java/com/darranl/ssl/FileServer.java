@@ -0,0 +1,325 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Serves the files of a directory over established connections of the {@link SSLEngineServer}.
+ *
+ * A client sends the name of a file relative to the directory terminated by {@code '\n'}, the server responds with
+ * the length of the file as an 8 byte big endian value, or {@code -1} if there is no such file, followed by the
+ * content of the file. The connection remains open for further requests.
+ *
+ * The content is passed to {@link SSLEngine#wrap(ByteBuffer[], ByteBuffer)} straight from the file, either from a
+ * memory mapping of the file or from a pooled direct buffer the file is read into, so it is never copied onto the
+ * heap. TLS rules out {@code sendfile} as the content has to pass through the cipher, the copy the cipher makes into
+ * the network buffer is the only copy in the mapped mode.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class FileServer {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int MAX_NAME_LENGTH = 1024;
+    private static final int READ_BUFFER_SIZE = 65536;
+    /**
+     * Large files are mapped a window at a time to bound the address space used by each connection.
+     */
+    private static final long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final long GIGABYTE = 1024 * 1024 * 1024;
+
+    enum Mode {
+        /**
+         * The file is mapped into memory and encrypted directly from the mapping.
+         */
+        MAPPED,
+        /**
+         * The file is read through its {@link FileChannel} into a pooled direct buffer and encrypted from there.
+         */
+        CHANNEL;
+    }
+
+    private final Path directory;
+    private final Mode mode;
+    private final BufferPool bufferPool;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+    private final LongAdder heapBytes = new LongAdder();
+
+    FileServer(Path directory, Mode mode, BufferPool bufferPool) throws IOException {
+        this(directory, mode, bufferPool, false);
+    }
+
+    /**
+     * @param measureAllocations if {@code true} the heap allocated by the thread is read around every wrap of a
+     *        transfer, this has a cost of its own on the serving path so should only be enabled when investigating.
+     */
+    FileServer(Path directory, Mode mode, BufferPool bufferPool, boolean measureAllocations) throws IOException {
+        this.directory = directory.toRealPath();
+        this.mode = mode;
+        this.bufferPool = bufferPool;
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (measureAllocations && threadMXBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            ((com.sun.management.ThreadMXBean) threadMXBean).setThreadAllocatedMemoryEnabled(true);
+            this.threadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        } else {
+            this.threadMXBean = null;
+        }
+    }
+
+    /**
+     * Start the transfer of the named file, if the file does not exist or is outside of the directory the transfer
+     * only consists of the {@code -1} length.
+     *
+     * @param name the name of the file relative to the directory.
+     * @return the transfer to be wrapped by the engine.
+     */
+    Transfer open(String name) throws IOException {
+        Path file;
+        try {
+            // The real path is checked so a symbolic link within the directory can not be used to escape it.
+            file = directory.resolve(name).toRealPath();
+        } catch (InvalidPathException | IOException e) {
+            file = null;
+        }
+
+        if (file == null || file.startsWith(directory) == false || Files.isRegularFile(file) == false) {
+            notFound.increment();
+            return new Transfer(name, null, -1);
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new Transfer(name, channel, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the bytes allocated on the heap by the calling thread so far, or {@code 0} if this is not being measured.
+     */
+    long allocatedBytes() {
+        return threadMXBean != null ? threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Record the result of wrapping content of a transfer.
+     *
+     * @param consumed the bytes of the file consumed by the engine.
+     * @param allocated the bytes allocated on the heap while wrapping.
+     */
+    void wrapped(long consumed, long allocated) {
+        bytes.add(consumed);
+        heapBytes.add(allocated);
+    }
+
+    Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new TreeMap<>();
+        long bytes = this.bytes.sum();
+        long heapBytes = this.heapBytes.sum();
+        statistics.put("served", served.sum());
+        statistics.put("notFound", notFound.sum());
+        statistics.put("bytes", bytes);
+        statistics.put("copiedBytes", copiedBytes.sum());
+        if (threadMXBean != null) {
+            statistics.put("heapBytes", heapBytes);
+            statistics.put("heapBytesPerGB", bytes > 0 ? (long) (heapBytes * ((double) GIGABYTE / bytes)) : 0);
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Read a file name terminated by {@code '\n'} from the application data of a connection.
+     *
+     * @param name the name read so far, retained by the caller between calls.
+     * @param appIn the application data, flipped for reading.
+     * @return {@code true} if the name is complete, any remaining application data is left in the buffer.
+     * @throws IOException if the name is too long.
+     */
+    static boolean readName(StringBuilder name, ByteBuffer appIn) throws IOException {
+        while (appIn.hasRemaining()) {
+            // Names are expected to be ASCII, anything else is unlikely to resolve to a file.
+            char c = (char) (appIn.get() & 0xFF);
+            if (c == '\n') {
+                return true;
+            }
+            if (name.length() >= MAX_NAME_LENGTH) {
+                throw new IOException("File name too long");
+            }
+            name.append(c);
+        }
+
+        return false;
+    }
+
+    /**
+     * Request a file over an established connection, the content is read into the supplied buffer and discarded.
+     *
+     * @param socket the connection to the server.
+     * @param name the name of the file to request.
+     * @param buffer the buffer to read the content into, reused across requests.
+     * @return the length of the file.
+     * @throws FileNotFoundException if the server does not have the file.
+     */
+    static long fetch(SSLSocket socket, String name, byte[] buffer) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((name + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        // Not buffered so nothing beyond the response is consumed.
+        InputStream in = socket.getInputStream();
+        long length = new DataInputStream(in).readLong();
+        if (length < 0) {
+            throw new FileNotFoundException(name);
+        }
+
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException(String.format("Connection closed with %d bytes of '%s' remaining", remaining, name));
+            }
+            remaining -= read;
+        }
+
+        return length;
+    }
+
+    /**
+     * The transfer of a single file over a connection, only used by the selector thread.
+     */
+    class Transfer {
+
+        private final String name;
+        private final FileChannel channel;
+        private final long length;
+        private final ByteBuffer header = ByteBuffer.allocate(8);
+        private final ByteBuffer[] sources = new ByteBuffer[2];
+
+        /**
+         * The position in the file the next window is mapped or read from.
+         */
+        private long position;
+        private ByteBuffer content;
+        private ByteBuffer readBuffer;
+
+        Transfer(String name, FileChannel channel, long length) {
+            this.name = name;
+            this.channel = channel;
+            this.length = length;
+            header.putLong(0, length);
+            sources[0] = header;
+            sources[1] = EMPTY;
+        }
+
+        /**
+         * @return the buffers to wrap next, the header followed by the current window of the content.
+         */
+        ByteBuffer[] sources() throws IOException {
+            if ((content == null || content.hasRemaining() == false) && position < length) {
+                if (mode == Mode.MAPPED) {
+                    content = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, length - position));
+                    position += content.remaining();
+                } else {
+                    if (readBuffer == null) {
+                        readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+                    }
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(READ_BUFFER_SIZE, length - position));
+                    while (readBuffer.hasRemaining()) {
+                        int read = channel.read(readBuffer, position + readBuffer.position());
+                        if (read < 0) {
+                            throw new EOFException(String.format("File '%s' truncated while being served", name));
+                        }
+                    }
+                    readBuffer.flip();
+                    position += readBuffer.remaining();
+                    copiedBytes.add(readBuffer.remaining());
+                    content = readBuffer;
+                }
+                sources[1] = content;
+            }
+
+            return sources;
+        }
+
+        /**
+         * @return {@code true} once the header and all of the content have been consumed by the engine.
+         */
+        boolean isComplete() {
+            return header.hasRemaining() == false && position >= length && (content == null || content.hasRemaining() == false);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        /**
+         * Release the resources of the transfer, called once complete or if the connection is closed.
+         */
+        void close() throws IOException {
+            if (channel != null && isComplete()) {
+                served.increment();
+            }
+            if (readBuffer != null) {
+                bufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+            content = null;
+            sources[1] = EMPTY;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A minimal request / response protocol over an established {@link SSLSocket}, each message is a four byte length
+ * followed by the payload and the server answers each request with a response of the same length in order.
+ *
+ * The client pipelines requests, up to the pipeline depth are in flight at once. Both sides buffer their writes up to
+ * the maximum plaintext size of a TLS record and only flush when they would otherwise wait, the client when the
+ * pipeline is full and the server when every request received so far has been answered, so small messages share
+ * records instead of each being sent in a record of its own.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class FramedProtocol {
+
+    /**
+     * The maximum plaintext length of a single TLS record.
+     */
+    private static final int RECORD_SIZE = 16384;
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private FramedProtocol() {
+    }
+
+    /**
+     * Answer requests until the client closes the connection.
+     *
+     * @return the number of bytes read and written.
+     */
+    static long serve(SSLSocket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), RECORD_SIZE));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), RECORD_SIZE);
+        byte[] payload = new byte[256];
+
+        long transferred = 0;
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            if (length < 0 || length > MAX_MESSAGE_SIZE) {
+                throw new IOException(String.format("Invalid message length %d", length));
+            }
+            if (length > payload.length) {
+                payload = new byte[length];
+            }
+            in.readFully(payload, 0, length);
+            write(out, payload, length);
+            transferred += 2L * (HEADER_SIZE + length);
+
+            // Responses to requests already received are written to the same records.
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+
+        return transferred;
+    }
+
+    /**
+     * Send requests until either the number of requests or the duration is reached, then wait for the outstanding
+     * responses.
+     *
+     * @param depth the maximum number of requests in flight.
+     * @param messageSize the payload size of each request.
+     * @param maxRequests the number of requests to send.
+     * @param durationNanos the maximum time to send requests for.
+     */
+    static Result drive(SSLSocket socket, int depth, int messageSize, long maxRequests, long durationNanos) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), RECORD_SIZE));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), RECORD_SIZE);
+        byte[] request = new byte[messageSize];
+        new Random().nextBytes(request);
+
+        Semaphore window = new Semaphore(depth);
+        // A permit is released for each request sent and once more when the writer finishes.
+        Semaphore inFlight = new Semaphore(0);
+        // The send time of each request in flight indexed by sequence modulo depth.
+        AtomicLongArray sendTimes = new AtomicLongArray(depth);
+        AtomicLong sent = new AtomicLong();
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        LatencyRecorder latency = new LatencyRecorder();
+
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        Thread writer = new Thread(() -> {
+            try {
+                long sequence = 0;
+                while (sequence < maxRequests && System.nanoTime() - end < 0) {
+                    if (window.tryAcquire() == false) {
+                        // The pipeline is full so send everything buffered before waiting for responses.
+                        out.flush();
+                        window.acquireUninterruptibly();
+                    }
+                    sendTimes.set((int) (sequence % depth), System.nanoTime());
+                    write(out, request, messageSize);
+                    sent.set(++sequence);
+                    inFlight.release();
+                }
+                out.flush();
+            } catch (IOException e) {
+                writeFailure.set(e);
+            } finally {
+                inFlight.release();
+            }
+        }, "framed-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        byte[] response = new byte[messageSize];
+        long received = 0;
+        boolean complete = false;
+        try {
+            while (true) {
+                inFlight.acquireUninterruptibly();
+                // Only the permit released as the writer finishes is acquired with nothing in flight.
+                if (received == sent.get() || writeFailure.get() != null) {
+                    break;
+                }
+                int length = in.readInt();
+                if (length != messageSize) {
+                    throw new IOException(String.format("Unexpected response length %d", length));
+                }
+                in.readFully(response, 0, length);
+                latency.record(System.nanoTime() - sendTimes.get((int) (received % depth)));
+                received++;
+                window.release();
+            }
+            complete = true;
+        } finally {
+            if (complete == false) {
+                // Unblock the writer whether it is writing or waiting for the pipeline.
+                socket.close();
+                window.release(depth);
+            }
+            join(writer);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+
+        return new Result(received, 2L * received * (HEADER_SIZE + messageSize), elapsed, latency);
+    }
+
+    /**
+     * Run the client against the server once for each pipeline depth, each depth uses a new connection.
+     */
+    static void run(SSLClient client, int[] depths, int messageSize, int durationSeconds) throws IOException {
+        System.out.println(String.format("Framed requests of %d bytes for %ds at each pipeline depth", messageSize, durationSeconds));
+        System.out.println(String.format("%6s %12s %10s %10s %10s %10s", "Depth", "Requests/s", "MB/s", "Mean(us)", "p50(us)", "p99(us)"));
+        for (int depth : depths) {
+            SSLSocket socket = client.handshake();
+            try {
+                Result result = drive(socket, depth, messageSize, Long.MAX_VALUE, TimeUnit.SECONDS.toNanos(durationSeconds));
+                System.out.println(String.format("%6d %12.1f %10.1f %10d %10d %10d", depth, result.getRequestsPerSecond(),
+                        DataTransfer.megabytesPerSecond(result.bytes, result.nanos), TimeUnit.NANOSECONDS.toMicros(result.latency.getMean()),
+                        TimeUnit.NANOSECONDS.toMicros(result.latency.getPercentile(50)),
+                        TimeUnit.NANOSECONDS.toMicros(result.latency.getPercentile(99))));
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(OutputStream out, byte[] payload, int length) throws IOException {
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(payload, 0, length);
+    }
+
+    /**
+     * The result of driving requests over a single connection.
+     */
+    static class Result {
+
+        private final long requests;
+        private final long bytes;
+        private final long nanos;
+        private final LatencyRecorder latency;
+
+        Result(long requests, long bytes, long nanos, LatencyRecorder latency) {
+            this.requests = requests;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.latency = latency;
+        }
+
+        long getRequests() {
+            return requests;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        double getRequestsPerSecond() {
+            return nanos > 0 ? requests * 1e9 / nanos : 0.0;
+        }
+
+        LatencyRecorder getLatency() {
+            return latency;
+        }
+
+    }
+
+}
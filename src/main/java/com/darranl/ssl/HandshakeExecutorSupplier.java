@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A supplier of the {@link Executor} used to complete the handshake of accepted connections.
+ *
+ * The pool is bounded in both threads and queue depth, once the queue is full further tasks are rejected with a
+ * {@link java.util.concurrent.RejectedExecutionException} so the caller can drop the connection.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class HandshakeExecutorSupplier implements Supplier<Executor> {
+
+    private final int threads;
+    private final int queueDepth;
+
+    private HandshakeExecutorSupplier(final int threads, final int queueDepth) {
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+    }
+
+    @Override
+    public Executor get() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueDepth), new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        executor.prestartAllCoreThreads();
+
+        return executor;
+    }
+
+    /**
+     * Supplier of an {@link Executor} which runs the task on the calling thread, i.e. the accept thread.
+     */
+    static Supplier<Executor> callerRunsSupplier() {
+        return () -> Runnable::run;
+    }
+
+    /**
+     * Supplier of an {@link Executor} which starts a new virtual thread for each task.
+     *
+     * Virtual threads are only available from Java 21 so the executor is obtained reflectively, on earlier JVMs this falls
+     * back to a new platform thread for each task.
+     */
+    static Supplier<Executor> virtualThreadSupplier() {
+        return () -> {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
+                System.out.println(String.format("Virtual threads are not available (%s), using a thread per connection", e instanceof InvocationTargetException ? e.getCause() : e));
+                return Executors.newCachedThreadPool(new WorkerThreadFactory());
+            }
+        };
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int queueDepth = 128;
+
+        Builder setThreads(final int threads) {
+            this.threads = threads;
+
+            return this;
+        }
+
+        Builder setQueueDepth(final int queueDepth) {
+            this.queueDepth = queueDepth;
+
+            return this;
+        }
+
+        Supplier<Executor> build() {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1");
+            }
+            if (queueDepth < 1) {
+                throw new IllegalArgumentException("queueDepth must be at least 1");
+            }
+
+            return new HandshakeExecutorSupplier(threads, queueDepth);
+        }
+
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "handshake-worker-" + count.incrementAndGet());
+        }
+
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Metrics about the handshakes performed by a client or server.
+ *
+ * All counters are striped ({@link LongAdder}) so recording does not contend between threads, the metrics can be read
+ * through JMX or dumped periodically as text.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class HandshakeMetrics implements HandshakeMetricsMXBean {
+
+    /**
+     * The maximum number of distinct failure causes tracked, further causes are counted together.
+     */
+    private static final int MAX_FAILURE_CAUSES = 100;
+    private static final String OTHER_FAILURES = "other";
+
+    private final String name;
+    private final LatencyRecorder handshakeLatency = new LatencyRecorder();
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> protocols = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> cipherSuites = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    private volatile Supplier<Map<String, Long>> aliasChoices = Collections::emptyMap;
+    private volatile Supplier<Map<String, Long>> bufferPool = Collections::emptyMap;
+    private volatile Supplier<Map<String, Long>> admission = Collections::emptyMap;
+    private volatile Supplier<Map<String, Long>> timeouts = Collections::emptyMap;
+    private volatile Supplier<Map<String, Long>> eventLog = Collections::emptyMap;
+    private volatile Supplier<Map<String, Long>> files = Collections::emptyMap;
+
+    HandshakeMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record a successfully completed handshake.
+     *
+     * @param startNanos the {@link System#nanoTime()} the connection was accepted or started.
+     * @param startMillis the {@link System#currentTimeMillis()} the connection was accepted or started, a session
+     *        created before this time has been resumed.
+     * @param session the negotiated session.
+     */
+    void handshakeComplete(long startNanos, long startMillis, SSLSession session) {
+        handshakeLatency.record(System.nanoTime() - startNanos);
+        if (isResumed(session, startMillis)) {
+            resumedHandshakes.increment();
+        } else {
+            fullHandshakes.increment();
+        }
+        increment(protocols, session.getProtocol());
+        increment(cipherSuites, session.getCipherSuite());
+    }
+
+    /**
+     * The criterion used throughout to decide if a handshake resumed a session, comparing session IDs does not work
+     * for TLSv1.3 where the ID is not used for resumption.
+     *
+     * @param session the negotiated session.
+     * @param startMillis the {@link System#currentTimeMillis()} the connection was accepted or started.
+     * @return {@code true} if the session was created before the connection so has been resumed.
+     */
+    static boolean isResumed(SSLSession session, long startMillis) {
+        return session.getCreationTime() < startMillis;
+    }
+
+    /**
+     * Record a failed handshake.
+     */
+    void handshakeFailed(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        String key = cause.getMessage() != null ? cause.getClass().getSimpleName() + ": " + cause.getMessage() : cause.getClass().getSimpleName();
+        if (failures.size() >= MAX_FAILURE_CAUSES && failures.containsKey(key) == false) {
+            key = OTHER_FAILURES;
+        }
+        increment(failures, key);
+    }
+
+    /**
+     * Set where the alias choices of the key manager are reported from.
+     */
+    void setAliasChoices(Supplier<Map<String, Long>> aliasChoices) {
+        this.aliasChoices = aliasChoices;
+    }
+
+    /**
+     * Set where the statistics of the connection buffer pool are reported from.
+     */
+    void setBufferPool(Supplier<Map<String, Long>> bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Set where the counters of the admission control are reported from.
+     */
+    void setAdmission(Supplier<Map<String, Long>> admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Set where the counters of connection timeouts are reported from.
+     */
+    void setTimeouts(Supplier<Map<String, Long>> timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Set where the counters of the event log are reported from.
+     */
+    void setEventLog(Supplier<Map<String, Long>> eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Set where the counters of the file server are reported from.
+     */
+    void setFiles(Supplier<Map<String, Long>> files) {
+        this.files = files;
+    }
+
+    /**
+     * Register this as an MBean with the platform MBean server.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("com.darranl.ssl:type=HandshakeMetrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            System.out.println(String.format("Unable to register handshake metrics (%s)", e.getMessage()));
+        }
+    }
+
+    /**
+     * Print a dump of the metrics to {@link System#out} at a fixed interval from a background thread.
+     *
+     * @param intervalSeconds the interval between each dump.
+     */
+    void startDump(long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "handshake-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> System.out.print(dump()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    LatencyRecorder getHandshakeLatency() {
+        return handshakeLatency;
+    }
+
+    @Override
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    @Override
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    @Override
+    public long getFailedHandshakes() {
+        long total = 0;
+        for (LongAdder current : failures.values()) {
+            total += current.sum();
+        }
+
+        return total;
+    }
+
+    @Override
+    public long getHandshakeLatencyMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(handshakeLatency.getMean());
+    }
+
+    @Override
+    public long getHandshakeLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(handshakeLatency.getPercentile(50));
+    }
+
+    @Override
+    public long getHandshakeLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(handshakeLatency.getPercentile(99));
+    }
+
+    @Override
+    public long getHandshakeLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(handshakeLatency.getMax());
+    }
+
+    @Override
+    public Map<String, Long> getProtocols() {
+        return snapshot(protocols);
+    }
+
+    @Override
+    public Map<String, Long> getCipherSuites() {
+        return snapshot(cipherSuites);
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        return snapshot(failures);
+    }
+
+    @Override
+    public Map<String, Long> getAliasChoices() {
+        return aliasChoices.get();
+    }
+
+    @Override
+    public Map<String, Long> getBufferPool() {
+        return bufferPool.get();
+    }
+
+    @Override
+    public Map<String, Long> getAdmission() {
+        return admission.get();
+    }
+
+    @Override
+    public Map<String, Long> getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public Map<String, Long> getEventLog() {
+        return eventLog.get();
+    }
+
+    @Override
+    public Map<String, Long> getFiles() {
+        return files.get();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Handshake metrics '%s'%n", name));
+        sb.append(String.format("    handshakes full=%d resumed=%d failed=%d%n", getFullHandshakes(), getResumedHandshakes(), getFailedHandshakes()));
+        sb.append(String.format("    latency %s%n", handshakeLatency.summary()));
+        sb.append(String.format("    protocols %s%n", getProtocols()));
+        sb.append(String.format("    cipher suites %s%n", getCipherSuites()));
+        sb.append(String.format("    failures %s%n", getFailures()));
+        sb.append(String.format("    aliases %s%n", getAliasChoices()));
+        sb.append(String.format("    buffer pool %s%n", getBufferPool()));
+        sb.append(String.format("    admission %s%n", getAdmission()));
+        sb.append(String.format("    timeouts %s%n", getTimeouts()));
+        sb.append(String.format("    event log %s%n", getEventLog()));
+        sb.append(String.format("    files %s%n", getFiles()));
+
+        return sb.toString();
+    }
+
+    private static void increment(ConcurrentMap<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentMap<String, LongAdder> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> current : counters.entrySet()) {
+            result.put(current.getKey(), current.getValue().sum());
+        }
+
+        return result;
+    }
+
+}
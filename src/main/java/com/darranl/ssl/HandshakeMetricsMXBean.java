@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link HandshakeMetrics}.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+public interface HandshakeMetricsMXBean {
+
+    long getFullHandshakes();
+
+    long getResumedHandshakes();
+
+    long getFailedHandshakes();
+
+    long getHandshakeLatencyMeanMicros();
+
+    long getHandshakeLatencyP50Micros();
+
+    long getHandshakeLatencyP99Micros();
+
+    long getHandshakeLatencyMaxMicros();
+
+    Map<String, Long> getProtocols();
+
+    Map<String, Long> getCipherSuites();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getAliasChoices();
+
+    Map<String, Long> getBufferPool();
+
+    Map<String, Long> getAdmission();
+
+    Map<String, Long> getTimeouts();
+
+    Map<String, Long> getEventLog();
+
+    Map<String, Long> getFiles();
+
+    /**
+     * @return a multi-line text summary of all metrics.
+     */
+    String dump();
+
+}
@@ -25,6 +25,13 @@ import java.security.Principal;
 import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 import javax.net.ssl.KeyManager;
@@ -40,29 +47,77 @@ import javax.net.ssl.X509KeyManager;
  */
 public class KeyManagerSupplier implements Supplier<KeyManager[]> {
 
+    /**
+     * Cached in place of a {@code null} decision as the maps used do not accept {@code null}, it is not counted.
+     */
+    private static final AliasChoice NO_CHOICE = new AliasChoice(null, null);
+
+    /**
+     * Set on a thread performing handshakes which are not client traffic, such as pre-warming, so the aliases chosen
+     * are neither counted nor logged.
+     */
+    private static final ThreadLocal<Boolean> UNRECORDED = new ThreadLocal<>();
+
     private final String algorithm;
     private final Supplier<KeyStore> keyStoreSupplier;
     private final char[] password;
     private final String fixedAlias;
-
-    private KeyManagerSupplier(String algorithm, Supplier<KeyStore> keyStoreSupplier, char[] password, final String fixedAlias) {
+    private final boolean sniIndex;
+    private final KeyLoading keyLoading;
+    private final boolean reportTimings;
+    private final EventLog eventLog;
+
+    /**
+     * Count of the aliases chosen, by key type then by alias.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, AliasChoice>> aliasChoices = new ConcurrentHashMap<>();
+
+    private KeyManagerSupplier(String algorithm, Supplier<KeyStore> keyStoreSupplier, char[] password, final String fixedAlias, final boolean sniIndex,
+            final KeyLoading keyLoading, final boolean reportTimings, final EventLog eventLog) {
         this.algorithm = algorithm;
         this.keyStoreSupplier = keyStoreSupplier;
         this.password = password;
         this.fixedAlias = fixedAlias;
+        this.sniIndex = sniIndex;
+        this.keyLoading = keyLoading;
+        this.reportTimings = reportTimings;
+        this.eventLog = eventLog;
     }
 
     @Override
     public KeyManager[] get() {
         try {
-            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(algorithm);
-            keyManagerFactory.init(keyStoreSupplier.get(), password);
+            long start = System.nanoTime();
+            KeyStore keyStore = keyStoreSupplier.get();
+            long loaded = System.nanoTime();
+
+            KeyManager[] keyManagers;
+            if (keyLoading != KeyLoading.EAGER && keyStore != null) {
+                int threads = keyLoading == KeyLoading.PARALLEL ? Runtime.getRuntime().availableProcessors() : 0;
+                keyManagers = new KeyManager[] { new LazyKeyManager(keyStore, password, threads) };
+            } else {
+                KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(algorithm);
+                keyManagerFactory.init(keyStore, password);
+                keyManagers = keyManagerFactory.getKeyManagers();
+            }
+            if (reportTimings) {
+                System.out.println(String.format("Loaded KeyStore in %dms, initialised %s key managers in %dms",
+                        TimeUnit.NANOSECONDS.toMillis(loaded - start), keyLoading.toString().toLowerCase(Locale.ENGLISH),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loaded)));
+            }
+
+            SniIndex index = null;
+            if (sniIndex && keyStore != null) {
+                long indexStart = System.nanoTime();
+                index = SniIndex.build(keyStore);
+                System.out.println(String.format("Indexed %d aliases by host name in %dms", index.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexStart)));
+            }
 
-            KeyManager[] keyManagers = keyManagerFactory.getKeyManagers();
             for (int i = 0; i < keyManagers.length; i++) {
                 if (keyManagers[i] instanceof X509KeyManager) {
                     X509KeyManager current = (X509KeyManager) keyManagers[i];
-                    WrapperKeyManager wrapper = new WrapperKeyManager(current);
+                    WrapperKeyManager wrapper = new WrapperKeyManager(current, index);
                     keyManagers[i] = wrapper;
                     if (current instanceof X509ExtendedKeyManager) {
                         keyManagers[i] = new ExtendedWrapperKeyManager(wrapper, (X509ExtendedKeyManager) current);
@@ -76,6 +131,75 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
         }
     }
 
+    /**
+     * Get the number of times each alias has been chosen for a server by the {@link KeyManager}s from this supplier.
+     *
+     * @return the counts keyed by {@code keyType:alias}.
+     */
+    Map<String, Long> getAliasChoices() {
+        Map<String, Long> result = new TreeMap<>();
+        for (ConcurrentMap<String, AliasChoice> byAlias : aliasChoices.values()) {
+            for (AliasChoice current : byAlias.values()) {
+                // A choice is created when the decision is cached, which may be before it is counted.
+                long count = current.count.sum();
+                if (count > 0) {
+                    result.put(current.keyType + ":" + current.alias, count);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Set if the aliases chosen by handshakes on the calling thread are counted and logged, they are by default.
+     */
+    static void setRecording(boolean recording) {
+        if (recording) {
+            UNRECORDED.remove();
+        } else {
+            UNRECORDED.set(Boolean.TRUE);
+        }
+    }
+
+    private AliasChoice aliasChoice(String keyType, String alias) {
+        if (alias == null) {
+            return NO_CHOICE;
+        }
+        ConcurrentMap<String, AliasChoice> byAlias = aliasChoices.get(keyType);
+        if (byAlias == null) {
+            byAlias = aliasChoices.computeIfAbsent(keyType, k -> new ConcurrentHashMap<>());
+        }
+        AliasChoice choice = byAlias.get(alias);
+        if (choice == null) {
+            choice = byAlias.computeIfAbsent(alias, k -> new AliasChoice(keyType, alias));
+        }
+
+        return choice;
+    }
+
+    /**
+     * How the private keys of the {@link KeyStore} are decrypted.
+     */
+    enum KeyLoading {
+
+        /**
+         * All of the private keys are decrypted by the {@link KeyManagerFactory} before it can be used.
+         */
+        EAGER,
+
+        /**
+         * Only the certificate chains are read up front, each private key is decrypted the first time it is used.
+         */
+        LAZY,
+
+        /**
+         * As {@link #LAZY} but the private keys are also decrypted in the background using a thread per processor.
+         */
+        PARALLEL;
+
+    }
+
     static Supplier<KeyManager[]> nullSupplier() {
         return () -> null;
     }
@@ -90,6 +214,10 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
         private Supplier<KeyStore> keyStoreSupplier = KeyStoreSupplier.nullSupplier();
         private char[] password;
         private String fixedAlias;
+        private boolean sniIndex;
+        private KeyLoading keyLoading = KeyLoading.EAGER;
+        private boolean reportTimings;
+        private EventLog eventLog;
 
         Builder setAlgorithm(String algorithm) {
             this.algorithm = algorithm;
@@ -115,8 +243,61 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
             return this;
         }
 
-        Supplier<KeyManager[]> build() {
-            return new KeyManagerSupplier(algorithm, keyStoreSupplier, password, fixedAlias);
+        /**
+         * Index the key store by the host names of the certificates so the server alias is chosen by a lookup of the SNI
+         * host name requested by the client, connections without a match fall back to the usual choice.
+         */
+        Builder setSniIndex(boolean sniIndex) {
+            this.sniIndex = sniIndex;
+
+            return this;
+        }
+
+        /**
+         * Set how the private keys are decrypted, other than for {@link KeyLoading#EAGER} the algorithm is not used.
+         */
+        Builder setKeyLoading(KeyLoading keyLoading) {
+            this.keyLoading = keyLoading;
+
+            return this;
+        }
+
+        /**
+         * Set if the time taken to load the {@link KeyStore} and initialise the key managers should be reported.
+         */
+        Builder setReportTimings(boolean reportTimings) {
+            this.reportTimings = reportTimings;
+
+            return this;
+        }
+
+        /**
+         * Set the {@link EventLog} each server alias chosen is logged to.
+         */
+        Builder setEventLog(EventLog eventLog) {
+            this.eventLog = eventLog;
+
+            return this;
+        }
+
+        KeyManagerSupplier build() {
+            return new KeyManagerSupplier(algorithm, keyStoreSupplier, password, fixedAlias, sniIndex, keyLoading, reportTimings, eventLog);
+        }
+
+    }
+
+    /**
+     * An alias chosen for a key type and the number of times it has been chosen.
+     */
+    private static class AliasChoice {
+
+        private final String keyType;
+        private final String alias;
+        private final LongAdder count = new LongAdder();
+
+        AliasChoice(String keyType, String alias) {
+            this.keyType = keyType;
+            this.alias = alias;
         }
 
     }
@@ -124,9 +305,24 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
     private class WrapperKeyManager implements X509KeyManager {
 
         private final X509KeyManager wrapped;
-
-        WrapperKeyManager(X509KeyManager toWrap) {
+        private final SniIndex sniIndex;
+
+        /**
+         * The SunX509 and lazy key managers only use the key type and issuers to choose an alias so for them, or where the
+         * alias is fixed, the decision can be cached. Other key managers may also consider the connection so are always asked.
+         *
+         * Only decisions without issuers are cached, keyed by the key type, as the issuers come from the peer caching
+         * those decisions would let clients grow the cache without limit.
+         */
+        private final boolean cacheDecisions;
+        private final ConcurrentMap<String, AliasChoice> serverAliases = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, X509Certificate[]> certificateChains = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+        WrapperKeyManager(X509KeyManager toWrap, SniIndex sniIndex) {
             this.wrapped = toWrap;
+            this.sniIndex = sniIndex;
+            this.cacheDecisions = fixedAlias != null || toWrap instanceof LazyKeyManager || "SunX509".equalsIgnoreCase(algorithm);
         }
 
         @Override
@@ -136,18 +332,72 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
 
         @Override
         public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
-            String alias = wrapped.chooseServerAlias(keyType, issuers, socket);
-            System.out.println(String.format("Alias '%s' chosen for keyType '%s'", alias, keyType));
-            if (fixedAlias != null) {
-                alias = fixedAlias;
-                System.out.println(String.format("Alias overidden to '%s'", alias));
+            return chooseServerAlias(keyType, issuers, socket, null);
+        }
+
+        String chooseServerAlias(String keyType, Principal[] issuers, Socket socket, SSLEngine engine) {
+            if (keyType == null) {
+                return null;
+            }
+
+            if (sniIndex != null) {
+                String alias = sniIndex.chooseServerAlias(keyType, socket, engine);
+                if (alias != null) {
+                    record(keyType, aliasChoice(keyType, alias));
+                    return alias;
+                }
+            }
+
+            boolean cacheable = cacheDecisions && (issuers == null || issuers.length == 0);
+            AliasChoice choice = cacheable ? serverAliases.get(keyType) : null;
+            if (choice == null) {
+                String alias;
+                if (fixedAlias != null) {
+                    alias = fixedAlias;
+                } else if (engine != null) {
+                    alias = ((X509ExtendedKeyManager) wrapped).chooseEngineServerAlias(keyType, issuers, engine);
+                } else {
+                    alias = wrapped.chooseServerAlias(keyType, issuers, socket);
+                }
+
+                choice = aliasChoice(keyType, alias);
+                if (cacheable) {
+                    serverAliases.putIfAbsent(keyType, choice);
+                }
+            }
+
+            // The key types which can not be used are also probed, only the alias actually chosen is recorded.
+            if (choice != NO_CHOICE) {
+                record(keyType, choice);
+            }
+            return choice.alias;
+        }
+
+        private void record(String keyType, AliasChoice choice) {
+            if (UNRECORDED.get() != null) {
+                return;
+            }
+            choice.count.increment();
+            if (eventLog != null) {
+                eventLog.log(EventLog.Type.ALIAS, keyType, choice.alias);
             }
-            return alias;
         }
 
         @Override
         public X509Certificate[] getCertificateChain(String alias) {
-            return wrapped.getCertificateChain(alias);
+            if (alias == null) {
+                return null;
+            }
+
+            X509Certificate[] certificateChain = certificateChains.get(alias);
+            if (certificateChain == null) {
+                certificateChain = wrapped.getCertificateChain(alias);
+                if (certificateChain != null) {
+                    certificateChains.putIfAbsent(alias, certificateChain);
+                }
+            }
+
+            return certificateChain;
         }
 
         @Override
@@ -157,7 +407,18 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
 
         @Override
         public PrivateKey getPrivateKey(String alias) {
-            PrivateKey privateKey = wrapped.getPrivateKey(alias);
+            if (alias == null) {
+                return null;
+            }
+
+            PrivateKey privateKey = privateKeys.get(alias);
+            if (privateKey == null) {
+                privateKey = wrapped.getPrivateKey(alias);
+                if (privateKey != null) {
+                    privateKeys.putIfAbsent(alias, privateKey);
+                }
+            }
+
             return privateKey;
         }
 
@@ -214,7 +475,7 @@ public class KeyManagerSupplier implements Supplier<KeyManager[]> {
 
         @Override
         public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
-            return raw.chooseEngineServerAlias(keyType, issuers, engine);
+            return wrapped.chooseServerAlias(keyType, issuers, null, engine);
         }
 
     }
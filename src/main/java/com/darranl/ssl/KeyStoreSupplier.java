@@ -74,6 +74,8 @@ class KeyStoreSupplier implements Supplier<KeyStore> {
         private String type = KeyStore.getDefaultType();
         private String path;
         private char[] password;
+        private boolean caching;
+        private long checkInterval = 1000;
 
         Builder setType(final String type) {
             this.type = type;
@@ -93,8 +95,28 @@ class KeyStoreSupplier implements Supplier<KeyStore> {
             return this;
         }
 
+        /**
+         * Set if the loaded {@link KeyStore} should be cached and only reloaded when the file changes.
+         */
+        Builder setCaching(final boolean caching) {
+            this.caching = caching;
+
+            return this;
+        }
+
+        /**
+         * Set the minimum time in milliseconds between checks of the file for changes when caching.
+         */
+        Builder setCheckInterval(final long checkInterval) {
+            this.checkInterval = checkInterval;
+
+            return this;
+        }
+
         Supplier<KeyStore> build() {
-            return new KeyStoreSupplier(type, path, password);
+            KeyStoreSupplier keyStoreSupplier = new KeyStoreSupplier(type, path, password);
+
+            return caching ? new CachingKeyStoreSupplier(keyStoreSupplier, path, checkInterval) : keyStoreSupplier;
         }
 
     }
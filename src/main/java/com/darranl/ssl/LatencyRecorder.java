@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free recorder of latencies to report percentiles.
+ *
+ * Values are counted in log-linear buckets, each power of two range is split into 16 buckets so any reported value is
+ * within about 6% of the value recorded.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a single latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        total.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMean() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the latency at the given percentile.
+     *
+     * @param percentile the percentile, e.g. {@code 99.9}
+     * @return the latency in nanoseconds.
+     */
+    long getPercentile(double percentile) {
+        long count = this.count.sum();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max((long) Math.ceil(count * percentile / 100), 1);
+        if (target >= count) {
+            return getMax();
+        }
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(value(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Add all values recorded by another recorder to this one.
+     */
+    void add(LatencyRecorder other) {
+        for (int i = 0; i < buckets.length(); i++) {
+            long value = other.buckets.get(i);
+            if (value > 0) {
+                buckets.addAndGet(i, value);
+            }
+        }
+        count.add(other.count.sum());
+        total.add(other.total.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * A one line summary of the recorded latencies in microseconds.
+     */
+    String summary() {
+        return String.format("count=%d mean=%dus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus", getCount(),
+                micros(getMean()), micros(getPercentile(50)), micros(getPercentile(90)), micros(getPercentile(99)),
+                micros(getPercentile(99.9)), micros(getMax()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The value in the middle of the bucket at the given index.
+     */
+    static long value(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lower + ((1L << shift) >> 1);
+    }
+
+}
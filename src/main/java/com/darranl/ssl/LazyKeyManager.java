@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+/**
+ * An {@link X509ExtendedKeyManager} which only reads the certificate chains of a {@link KeyStore} up front and decrypts
+ * each private key the first time it is used, optionally decrypting all of the keys in the background.
+ *
+ * The {@code SunX509} key manager decrypts every private key as it is initialised, for a key store with thousands of
+ * entries that dominates the start up time. Aliases are chosen in the same way, the first alias with a matching key type
+ * and issuer, but in the order of the key store rather than at random.
+ *
+ * A private key that can not be decrypted is reported when it is first used rather than at start up.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class LazyKeyManager extends X509ExtendedKeyManager {
+
+    private final KeyStore keyStore;
+    private final char[] password;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final AtomicInteger decrypted = new AtomicInteger();
+
+    /**
+     * @param keyStore the key store to use.
+     * @param password the password of the private keys.
+     * @param threads the number of threads to decrypt the private keys in the background, or {@code 0} to only decrypt
+     *        them when first used.
+     */
+    LazyKeyManager(KeyStore keyStore, char[] password, int threads) throws KeyStoreException {
+        this.keyStore = keyStore;
+        this.password = password;
+
+        long start = System.nanoTime();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isKeyEntry(alias)) {
+                Certificate[] chain = keyStore.getCertificateChain(alias);
+                if (chain != null && chain.length > 0 && chain[0] instanceof X509Certificate) {
+                    entries.put(alias, new Entry(alias, Arrays.copyOf(chain, chain.length, X509Certificate[].class)));
+                }
+            }
+        }
+        System.out.println(String.format("Indexed %d aliases in %dms", entries.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+        if (threads > 0 && entries.isEmpty() == false) {
+            decryptAll(threads);
+        }
+    }
+
+    private void decryptAll(int threads) {
+        long start = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(entries.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "key-decryption");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        for (Entry current : entries.values()) {
+            executor.execute(() -> {
+                current.getPrivateKey();
+                if (remaining.decrementAndGet() == 0) {
+                    System.out.println(String.format("Decrypted %d private keys in %dms using %d threads", entries.size(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), threads));
+                }
+            });
+        }
+        // The threads exit once the queued keys have been decrypted.
+        executor.shutdown();
+    }
+
+    /**
+     * @return the number of private keys decrypted so far.
+     */
+    int getDecrypted() {
+        return decrypted.get();
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+        if (keyTypes != null) {
+            for (String keyType : keyTypes) {
+                String[] aliases = getClientAliases(keyType, issuers);
+                if (aliases != null) {
+                    return aliases[0];
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyTypes, Principal[] issuers, SSLEngine engine) {
+        return chooseClientAlias(keyTypes, issuers, null);
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        String[] aliases = getServerAliases(keyType, issuers);
+
+        return aliases != null ? aliases[0] : null;
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        return chooseServerAlias(keyType, issuers, null);
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        return getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        if (keyType == null) {
+            return null;
+        }
+
+        // As with SunX509 a key type such as EC_RSA also requires the certificate to be signed using that algorithm.
+        String keyAlgorithm = keyType;
+        String signatureAlgorithm = null;
+        int separator = keyType.indexOf('_');
+        if (separator > 0) {
+            keyAlgorithm = keyType.substring(0, separator);
+            signatureAlgorithm = keyType.substring(separator + 1);
+        }
+
+        Set<Principal> issuerSet = issuers != null && issuers.length > 0 ? new HashSet<>(Arrays.asList(issuers)) : null;
+        List<String> aliases = new ArrayList<>();
+        for (Entry current : entries.values()) {
+            if (current.matches(keyAlgorithm, signatureAlgorithm, issuerSet)) {
+                aliases.add(current.alias);
+            }
+        }
+
+        return aliases.isEmpty() ? null : aliases.toArray(new String[aliases.size()]);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        Entry entry = alias != null ? entries.get(alias) : null;
+
+        return entry != null ? entry.chain.clone() : null;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        Entry entry = alias != null ? entries.get(alias) : null;
+
+        return entry != null ? entry.getPrivateKey() : null;
+    }
+
+    private class Entry {
+
+        private final String alias;
+        private final X509Certificate[] chain;
+        private volatile boolean loaded;
+        private PrivateKey privateKey;
+
+        Entry(String alias, X509Certificate[] chain) {
+            this.alias = alias;
+            this.chain = chain;
+        }
+
+        boolean matches(String keyAlgorithm, String signatureAlgorithm, Set<Principal> issuers) {
+            if (keyAlgorithm.equals(chain[0].getPublicKey().getAlgorithm()) == false) {
+                return false;
+            }
+            if (signatureAlgorithm != null) {
+                if (chain.length > 1) {
+                    if (signatureAlgorithm.equals(chain[1].getPublicKey().getAlgorithm()) == false) {
+                        return false;
+                    }
+                } else if (chain[0].getSigAlgName().toUpperCase(Locale.ENGLISH).contains("WITH" + signatureAlgorithm) == false) {
+                    return false;
+                }
+            }
+            if (issuers != null) {
+                for (X509Certificate current : chain) {
+                    if (issuers.contains(current.getIssuerX500Principal())) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            return true;
+        }
+
+        PrivateKey getPrivateKey() {
+            if (loaded == false) {
+                synchronized (this) {
+                    if (loaded == false) {
+                        try {
+                            Key key = keyStore.getKey(alias, password);
+                            if (key instanceof PrivateKey) {
+                                privateKey = (PrivateKey) key;
+                                decrypted.incrementAndGet();
+                            }
+                        } catch (GeneralSecurityException e) {
+                            System.out.println(String.format("Unable to decrypt the private key of alias '%s' (%s)", alias, e.getMessage()));
+                        }
+                        loaded = true;
+                    }
+                }
+            }
+
+            return privateKey;
+        }
+
+    }
+
+}
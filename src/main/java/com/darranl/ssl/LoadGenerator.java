@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Drive a server with handshakes from a number of concurrent client threads.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class LoadGenerator {
+
+    private final SSLClient client;
+    private final DataTransfer dataTransfer;
+    private final int threads;
+    private final int rate;
+    private final long durationNanos;
+    private final boolean keepAlive;
+    private final boolean resume;
+    private final ConnectionPool pool;
+
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Queue<SSLSocket> openConnections = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger peakOpen = new AtomicInteger();
+
+    private AtomicLong nextSlot;
+    private long end;
+
+    /**
+     * @param client the client used to open connections.
+     * @param dataTransfer the data to transfer over each connection after the handshake.
+     * @param threads the number of concurrent client threads.
+     * @param rate the target number of new connections per second across all threads, {@code 0} for no limit. With a
+     *        rate latency is measured from the time each connection was scheduled to start.
+     * @param durationSeconds how long to run for.
+     * @param keepAlive if {@code true} connections are held open until the end of the run instead of being closed after
+     *        the handshake.
+     * @param resume if {@code false} each session is invalidated after the handshake so every connection is a full
+     *        handshake.
+     * @param pool if not {@code null} connections are leased from the pool for each exchange and returned afterwards
+     *        instead of being opened and closed.
+     */
+    LoadGenerator(SSLClient client, DataTransfer dataTransfer, int threads, int rate, int durationSeconds, boolean keepAlive, boolean resume,
+            ConnectionPool pool) {
+        this.client = client;
+        this.dataTransfer = dataTransfer;
+        this.threads = threads;
+        this.rate = rate;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.keepAlive = keepAlive;
+        this.resume = resume;
+        this.pool = pool;
+    }
+
+    void run() throws InterruptedException {
+        System.out.println(String.format("Starting %d client threads for %ds rate %s keep-alive '%b' resume '%b' pooled '%b'", threads,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), rate > 0 ? rate + "/s" : "unlimited", keepAlive, resume, pool != null));
+
+        long start = System.nanoTime();
+        end = start + durationNanos;
+        nextSlot = new AtomicLong(start);
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "load-" + (i + 1));
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread current : workers) {
+            current.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        SSLSocket socket;
+        while ((socket = openConnections.poll()) != null) {
+            close(socket);
+        }
+
+        report(elapsed);
+    }
+
+    private void work() {
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+
+        while (true) {
+            long now = System.nanoTime();
+            if (now - end >= 0) {
+                return;
+            }
+            long intended = now;
+            if (interval > 0) {
+                long slot = nextSlot.getAndAdd(interval);
+                if (slot - end >= 0) {
+                    return;
+                }
+                while ((now = System.nanoTime()) - slot < 0) {
+                    LockSupport.parkNanos(slot - now);
+                }
+                // Latency is measured from when the connection was due rather than when a thread became free to
+                // open it, otherwise the time spent queued behind a slow server would be omitted.
+                intended = slot;
+            }
+
+            SSLSocket socket = null;
+            ConnectionPool.Lease lease = null;
+            try {
+                if (pool != null) {
+                    lease = pool.lease(client.getTarget());
+                    socket = lease.getSocket();
+                } else {
+                    socket = client.handshake();
+                }
+                latency.record(System.nanoTime() - intended);
+                if (lease != null && lease.isReused()) {
+                    reused.increment();
+                } else {
+                    handshakes.increment();
+                    if (resume == false) {
+                        socket.getSession().invalidate();
+                    }
+                }
+                if (dataTransfer.isEnabled()) {
+                    dataTransfer.drive(socket);
+                }
+
+                if (lease != null) {
+                    lease.close();
+                } else if (keepAlive) {
+                    openConnections.add(socket);
+                    peakOpen.accumulateAndGet(openCount.incrementAndGet(), Math::max);
+                } else {
+                    if (resume && dataTransfer.isEnabled() == false) {
+                        SSLClient.readSessionTickets(socket);
+                    }
+                    close(socket);
+                }
+            } catch (IOException | RuntimeException e) {
+                errors.computeIfAbsent(e.getClass().getName(), k -> new LongAdder()).increment();
+                if (lease != null) {
+                    lease.invalidate();
+                } else if (socket != null) {
+                    close(socket);
+                }
+            }
+        }
+    }
+
+    private void report(long elapsed) {
+        double seconds = elapsed / 1e9;
+        long total = handshakes.sum();
+        System.out.println(String.format("Completed %d handshakes in %.1fs, %.1f handshakes/s", total, seconds, total / seconds));
+        if (pool != null) {
+            long reusedCount = reused.sum();
+            System.out.println(String.format("Leased %d connections, %d reused, %.1f leases/s", total + reusedCount, reusedCount, (total + reusedCount) / seconds));
+            System.out.println(String.format("Lease (connect + handshake unless reused) %s", latency.summary()));
+            System.out.println(String.format("Connection pool %s", pool.getStatistics()));
+        } else {
+            System.out.println(String.format("Handshake (connect + handshake) %s", latency.summary()));
+        }
+        if (dataTransfer.isEnabled()) {
+            System.out.println(dataTransfer.aggregate());
+        }
+        if (keepAlive) {
+            System.out.println(String.format("Peak open connections %d", peakOpen.get()));
+        }
+
+        Map<String, LongAdder> sortedErrors = new TreeMap<>(errors);
+        long errorCount = 0;
+        for (LongAdder current : sortedErrors.values()) {
+            errorCount += current.sum();
+        }
+        System.out.println(String.format("Errors %d", errorCount));
+        for (Map.Entry<String, LongAdder> current : sortedErrors.entrySet()) {
+            System.out.println(String.format("    %s %d", current.getKey(), current.getValue().sum()));
+        }
+    }
+
+    private static void close(SSLSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
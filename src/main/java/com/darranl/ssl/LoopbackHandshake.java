@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Utility to perform a complete handshake in memory between a client and a server {@link SSLEngine} without any
+ * network I/O.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class LoopbackHandshake {
+
+    private static final int MAX_ITERATIONS = 100;
+
+    private LoopbackHandshake() {
+    }
+
+    /**
+     * Perform a handshake between the two contexts.
+     *
+     * As the engines are created without a peer host and port the session is never resumed, each call is a full
+     * handshake.
+     *
+     * @param serverContext the context for the server side of the handshake.
+     * @param clientContext the context for the client side of the handshake.
+     * @param enabledCiphers the cipher suites to enable on both sides or {@code null} for the defaults.
+     * @return the session negotiated by the client.
+     * @throws SSLException if the handshake fails.
+     */
+    static SSLSession handshake(SSLContext serverContext, SSLContext clientContext, String[] enabledCiphers) throws SSLException {
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+        SSLEngine client = clientContext.createSSLEngine();
+        client.setUseClientMode(true);
+        if (enabledCiphers != null) {
+            server.setEnabledCipherSuites(enabledCiphers);
+            client.setEnabledCipherSuites(enabledCiphers);
+        }
+
+        SSLSession session = client.getSession();
+        ByteBuffer clientToServer = ByteBuffer.allocate(session.getPacketBufferSize());
+        ByteBuffer serverToClient = ByteBuffer.allocate(session.getPacketBufferSize());
+        ByteBuffer clientApp = ByteBuffer.allocate(session.getApplicationBufferSize());
+        ByteBuffer serverApp = ByteBuffer.allocate(session.getApplicationBufferSize());
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            boolean clientDone = step(client, empty, clientToServer, serverToClient, clientApp);
+            boolean serverDone = step(server, empty, serverToClient, clientToServer, serverApp);
+            if (clientDone && serverDone && clientToServer.position() == 0 && serverToClient.position() == 0) {
+                return client.getSession();
+            }
+        }
+
+        throw new SSLException("Handshake did not complete");
+    }
+
+    /**
+     * Advance a single engine as far as it can go with the data currently available.
+     *
+     * @return {@code true} if the engine has completed the handshake.
+     */
+    private static boolean step(SSLEngine engine, ByteBuffer empty, ByteBuffer out, ByteBuffer in, ByteBuffer app) throws SSLException {
+        while (true) {
+            HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+            switch (handshakeStatus) {
+                case NEED_WRAP:
+                    if (engine.wrap(empty, out).getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        // The peer needs to consume what has already been wrapped.
+                        return false;
+                    }
+                    break;
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                    // Post handshake messages such as a TLSv1.3 NewSessionTicket still need to be consumed.
+                    if (in.position() == 0) {
+                        return true;
+                    } else if (unwrap(engine, in, app) == false) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // NEED_UNWRAP and from Java 9 NEED_UNWRAP_AGAIN.
+                    if (unwrap(engine, in, app) == false) {
+                        return false;
+                    }
+            }
+        }
+    }
+
+    private static boolean unwrap(SSLEngine engine, ByteBuffer in, ByteBuffer app) throws SSLException {
+        in.flip();
+        SSLEngineResult result = engine.unwrap(in, app);
+        in.compact();
+        app.clear();
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("Engine closed during handshake");
+        }
+
+        return result.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Run the same handshake load for each combination of protocol and server keystore, reporting the handshake latency
+ * and the CPU time consumed per handshake.
+ *
+ * The server runs in the same process on a loopback port so the latency includes the network round trips and the CPU
+ * time, taken from the process, covers both the client and the server. Sessions are invalidated after each handshake
+ * so every handshake is a full handshake.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class ProtocolMatrix {
+
+    private static final String PASSWORD = "keystore_password";
+
+    private final String[] protocols;
+    private final String[] keystores;
+    private final int threads;
+    private final long durationNanos;
+
+    /**
+     * @param protocols the protocols to compare, each run enables a single protocol.
+     * @param keystores the server keystores to compare.
+     * @param threads the number of concurrent client threads.
+     * @param durationSeconds how long to run each combination for.
+     */
+    ProtocolMatrix(String[] protocols, String[] keystores, int threads, int durationSeconds) {
+        this.protocols = protocols;
+        this.keystores = keystores;
+        this.threads = threads;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    void run() throws IOException, InterruptedException {
+        System.out.println(String.format("Starting protocol matrix with %d client threads for %ds per combination", threads, TimeUnit.NANOSECONDS.toSeconds(durationNanos)));
+        List<String> results = new ArrayList<>();
+        for (String keystore : keystores) {
+            for (String protocol : protocols) {
+                results.add(run(protocol, keystore));
+            }
+        }
+
+        System.out.println(String.format("%-8s %-14s %12s %10s %10s %10s %12s %7s", "Protocol", "Keystore", "Handshakes/s", "Mean(us)", "p50(us)", "p99(us)", "CPU/hs(us)", "Errors"));
+        for (String current : results) {
+            System.out.println(current);
+        }
+    }
+
+    private String run(String protocol, String keystore) throws IOException, InterruptedException {
+        String[] enabledProtocols = { protocol };
+        SSLContext serverContext = SSLContextSupplier.builder()
+                .setProtocol("TLS")
+                .setKeyManagerSupplier(KeyManagerSupplier.builder()
+                        .setKeyStoreSupplier(KeyStoreSupplier.builder()
+                                .setType("JKS")
+                                .setPath(keystore)
+                                .setPassword(PASSWORD.toCharArray())
+                                .build())
+                        .setPassword(PASSWORD.toCharArray())
+                        .build())
+                .build()
+                .get();
+        SSLContext clientContext = SSLContextSupplier.builder()
+                .setProtocol("TLS")
+                .setTrustManagerSupplier(TrustManagerSupplier.trustingSupplier())
+                .build()
+                .get();
+
+        ServerSocket serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        ExecutorService serverExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "matrix-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(() -> accept(serverSocket, serverContext, enabledProtocols, serverExecutor), "matrix-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        try {
+            // A single handshake first, both to warm up and to skip combinations which can not be negotiated.
+            try {
+                handshake(clientContext, enabledProtocols, serverSocket.getLocalPort()).close();
+            } catch (IOException e) {
+                return String.format("%-8s %-14s not supported (%s)", protocol, keystore, e.getMessage());
+            }
+
+            LatencyRecorder latency = new LatencyRecorder();
+            LongAdder errors = new LongAdder();
+            long cpuStart = processCpuTime();
+            long start = System.nanoTime();
+            long end = start + durationNanos;
+
+            Thread[] clients = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                clients[i] = new Thread(() -> {
+                    while (System.nanoTime() - end < 0) {
+                        long handshakeStart = System.nanoTime();
+                        try {
+                            handshake(clientContext, enabledProtocols, serverSocket.getLocalPort()).close();
+                            latency.record(System.nanoTime() - handshakeStart);
+                        } catch (IOException e) {
+                            errors.increment();
+                        }
+                    }
+                }, "matrix-client-" + i);
+                clients[i].start();
+            }
+            for (Thread current : clients) {
+                current.join();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long cpu = processCpuTime() - cpuStart;
+            long count = latency.getCount();
+            String cpuPerHandshake = cpuStart >= 0 && count > 0 ? String.valueOf(TimeUnit.NANOSECONDS.toMicros(cpu / count)) : "n/a";
+
+            return String.format("%-8s %-14s %12.1f %10d %10d %10d %12s %7d", protocol, keystore, count / (elapsed / 1e9),
+                    TimeUnit.NANOSECONDS.toMicros(latency.getMean()), TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(99)), cpuPerHandshake, errors.sum());
+        } finally {
+            serverSocket.close();
+            serverExecutor.shutdown();
+            serverExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static SSLSocket handshake(SSLContext clientContext, String[] enabledProtocols, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port);
+        try {
+            socket.setEnabledProtocols(enabledProtocols);
+            socket.startHandshake();
+            socket.getSession().invalidate();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+    private static void accept(ServerSocket serverSocket, SSLContext serverContext, String[] enabledProtocols, ExecutorService serverExecutor) {
+        while (serverSocket.isClosed() == false) {
+            try {
+                Socket socket = serverSocket.accept();
+                serverExecutor.execute(() -> {
+                    try (SSLSocket client = (SSLSocket) serverContext.getSocketFactory().createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true)) {
+                        client.setUseClientMode(false);
+                        client.setEnabledProtocols(enabledProtocols);
+                        client.startHandshake();
+                    } catch (IOException e) {
+                        // The failure is reported by the client.
+                    }
+                });
+            } catch (IOException e) {
+                // The server socket has been closed at the end of the run.
+            }
+        }
+    }
+
+    /**
+     * @return the CPU time used by the process in nanoseconds, or {@code -1} if not available.
+     */
+    private static long processCpuTime() {
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+        }
+
+        return -1;
+    }
+
+}
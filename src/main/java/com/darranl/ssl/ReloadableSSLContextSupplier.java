@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+
+/**
+ * A holder of the current {@link SSLContext} which can be replaced while the server is running.
+ *
+ * Calls to {@link #get()} only read the current {@link SSLContext} so it can be called for each new connection. A
+ * replacement is built by the thread calling {@link #reload()}, or by a background thread when a change check reports
+ * a change, and is then swapped in for new connections. Connections already established or mid handshake keep using
+ * the {@link SSLContext} they were created from.
+ *
+ * Once registered a reload can also be requested through JMX using the {@link ReloadableSSLContextSupplierMXBean}.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class ReloadableSSLContextSupplier implements Supplier<SSLContext>, ReloadableSSLContextSupplierMXBean {
+
+    static final ObjectName OBJECT_NAME = objectName();
+
+    private final Supplier<SSLContext> sslContextSupplier;
+    private final BooleanSupplier changeCheck;
+    private final long checkInterval;
+
+    private volatile SSLContext current;
+    private volatile long generation;
+
+    private ReloadableSSLContextSupplier(final Supplier<SSLContext> sslContextSupplier, final BooleanSupplier changeCheck, final long checkInterval) {
+        this.sslContextSupplier = sslContextSupplier;
+        this.changeCheck = changeCheck;
+        this.checkInterval = checkInterval;
+    }
+
+    @Override
+    public SSLContext get() {
+        SSLContext current = this.current;
+        if (current == null) {
+            current = initialise();
+        }
+
+        return current;
+    }
+
+    /**
+     * Get the generation of the current {@link SSLContext}, this is incremented each time it is replaced.
+     */
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Build a new {@link SSLContext} and swap it in for new connections.
+     *
+     * If the new {@link SSLContext} can not be built the current one remains in use.
+     *
+     * @return {@code true} if the {@link SSLContext} was replaced.
+     */
+    @Override
+    public synchronized boolean reload() {
+        try {
+            SSLContext replacement = sslContextSupplier.get();
+            current = replacement;
+            generation++;
+            System.out.println(String.format("Replaced SSLContext, generation %d", generation));
+
+            return true;
+        } catch (IllegalStateException e) {
+            System.out.println(String.format("Unable to replace SSLContext (%s)", e.getMessage()));
+
+            return false;
+        }
+    }
+
+    /**
+     * Register with the platform MBean server so a reload can be requested through JMX.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, OBJECT_NAME);
+        } catch (JMException e) {
+            System.out.println(String.format("Unable to register SSLContext reload (%s)", e.getMessage()));
+        }
+    }
+
+    private synchronized SSLContext initialise() {
+        if (current == null) {
+            current = sslContextSupplier.get();
+
+            if (changeCheck != null && checkInterval > 0) {
+                ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "ssl-context-reload");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                scheduler.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return current;
+    }
+
+    private void check() {
+        try {
+            if (changeCheck.getAsBoolean()) {
+                reload();
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled check.
+            System.out.println(String.format("Unable to check for changes (%s)", e.getMessage()));
+        }
+    }
+
+    private static ObjectName objectName() {
+        try {
+            return new ObjectName("com.darranl.ssl:type=ReloadableSSLContextSupplier");
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private Supplier<SSLContext> sslContextSupplier;
+        private BooleanSupplier changeCheck;
+        private long checkInterval;
+
+        Builder setSSLContextSupplier(final Supplier<SSLContext> sslContextSupplier) {
+            this.sslContextSupplier = sslContextSupplier;
+
+            return this;
+        }
+
+        /**
+         * Set a check called periodically in the background, each time it returns {@code true} the {@link SSLContext} is
+         * reloaded.
+         */
+        Builder setChangeCheck(final BooleanSupplier changeCheck) {
+            this.changeCheck = changeCheck;
+
+            return this;
+        }
+
+        /**
+         * Set the interval in milliseconds between calls to the change check, {@code 0} disables the check.
+         */
+        Builder setCheckInterval(final long checkInterval) {
+            this.checkInterval = checkInterval;
+
+            return this;
+        }
+
+        ReloadableSSLContextSupplier build() {
+            if (sslContextSupplier == null) {
+                throw new IllegalStateException("No SSLContext supplier specified");
+            }
+
+            return new ReloadableSSLContextSupplier(sslContextSupplier, changeCheck, checkInterval);
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+/**
+ * Management interface of {@link ReloadableSSLContextSupplier}.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+public interface ReloadableSSLContextSupplierMXBean {
+
+    /**
+     * @return the generation of the current {@code SSLContext}, incremented each time it is replaced.
+     */
+    long getGeneration();
+
+    /**
+     * Build a new {@code SSLContext} and swap it in for new connections.
+     *
+     * @return {@code true} if the {@code SSLContext} was replaced.
+     */
+    boolean reload();
+
+}
@@ -17,9 +17,21 @@
  */
 package com.darranl.ssl;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -33,6 +45,200 @@ import org.wildfly.security.ssl.CipherSuiteSelector;
 public class SSLClient {
 
     private static final int DEFAULT_PORT = 2222;
+    private static final int TICKET_TIMEOUT = 100;
+
+    private final int port;
+    private final SSLSocketFactory socketFactory;
+    private final String[] enabledCiphers;
+    private final String[] enabledProtocols;
+    private final HandshakeMetrics metrics;
+    private final DataTransfer dataTransfer;
+    private final List<List<SNIServerName>> serverNames;
+    private final AtomicInteger nextServerName = new AtomicInteger();
+
+    private SSLClient(int port, String ciphers, String[] protocols, SSLContext sslContext, HandshakeMetrics metrics, DataTransfer dataTransfer,
+            String[] serverNames) {
+        this.port = port;
+        this.enabledProtocols = protocols;
+        if (serverNames != null) {
+            this.serverNames = new ArrayList<>(serverNames.length);
+            for (String current : serverNames) {
+                this.serverNames.add(Collections.singletonList(new SNIHostName(current)));
+            }
+        } else {
+            this.serverNames = null;
+        }
+        this.metrics = metrics;
+        this.dataTransfer = dataTransfer;
+        this.socketFactory = sslContext.getSocketFactory();
+
+        if (ciphers != null && ciphers.length() > 0) {
+            CipherSuiteSelector cipherSuiteSelector = CipherSuiteSelector.fromString(ciphers);
+            enabledCiphers = cipherSuiteSelector.evaluate(socketFactory.getSupportedCipherSuites());
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < enabledCiphers.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(enabledCiphers[i]);
+            }
+            sb.append("}");
+            System.out.println(String.format("Enabled Ciphers '%s'", sb.toString()));
+        } else {
+            enabledCiphers = null;
+        }
+    }
+
+    /**
+     * @return the address of the server.
+     */
+    InetSocketAddress getTarget() {
+        return new InetSocketAddress("localhost", port);
+    }
+
+    /**
+     * Connect the socket to the target and layer a TLS connection over it, the handshake is not started.
+     */
+    SSLSocket connect(Socket plain, InetSocketAddress target) throws IOException {
+        dataTransfer.configure(plain);
+        plain.connect(target, 5000);
+
+        SSLSocket socket = (SSLSocket) socketFactory.createSocket(plain, target.getHostString(), target.getPort(), true);
+        if (enabledCiphers != null) {
+            socket.setEnabledCipherSuites(enabledCiphers);
+        }
+        if (enabledProtocols != null) {
+            socket.setEnabledProtocols(enabledProtocols);
+        }
+        if (serverNames != null) {
+            // Each connection requests the next host name so a list of names exercises the alias selection of the server.
+            SSLParameters parameters = socket.getSSLParameters();
+            parameters.setServerNames(serverNames.get((nextServerName.getAndIncrement() & Integer.MAX_VALUE) % serverNames.size()));
+            socket.setSSLParameters(parameters);
+        }
+
+        return socket;
+    }
+
+    /**
+     * Open a new connection to the server and complete the handshake, the result is recorded in the
+     * {@link HandshakeMetrics}.
+     */
+    SSLSocket handshake() throws IOException {
+        return handshake(new Socket(), getTarget());
+    }
+
+    /**
+     * Connect the socket to the target and complete the handshake, the result is recorded in the
+     * {@link HandshakeMetrics}.
+     */
+    SSLSocket handshake(Socket plain, InetSocketAddress target) throws IOException {
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        SSLSocket socket = connect(plain, target);
+        try {
+            socket.startHandshake();
+        } catch (IOException e) {
+            metrics.handshakeFailed(e);
+            socket.close();
+            throw e;
+        }
+        metrics.handshakeComplete(startNanos, startMillis, socket.getSession());
+
+        return socket;
+    }
+
+    private void run() throws IOException {
+        SSLSocket socket;
+        try {
+            socket = handshake();
+        } catch (IOException e) {
+            // Already recorded in the metrics, reported as the session would previously have been reported as invalid.
+            System.out.println(String.format("Handshake with '%s' failed (%s)", getTarget(), e.getMessage()));
+            return;
+        }
+
+        try {
+            System.out.println(String.format("Have a connection to '%s' valid SSL Session '%b' selected cipher '%s'", socket.getInetAddress().getHostAddress(), socket.getSession().isValid(), socket.getSession().getCipherSuite()));
+            if (dataTransfer.isEnabled() && socket.getSession().isValid()) {
+                System.out.println(dataTransfer.drive(socket));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Request a file from a server serving files the specified number of times over a single connection.
+     */
+    private void runFile(String file, int requests) throws IOException {
+        byte[] buffer = new byte[65536];
+        SSLSocket socket = handshake();
+        try {
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                bytes += FileServer.fetch(socket, file, buffer);
+            }
+            long time = System.nanoTime() - start;
+
+            System.out.println(String.format("Fetched '%s' %d times, %d bytes in %dms %.1f MB/s", file, requests, bytes, TimeUnit.NANOSECONDS.toMillis(time),
+                    DataTransfer.megabytesPerSecond(bytes, time)));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * With TLSv1.3 the server sends the tickets used to resume the session after the handshake, they are only processed
+     * when the client reads so a connection closed straight after the handshake could not be resumed.
+     *
+     * The read returns once the server closes the connection, otherwise gives up after a short timeout.
+     */
+    static void readSessionTickets(SSLSocket socket) throws IOException {
+        if ("TLSv1.3".equals(socket.getSession().getProtocol()) == false) {
+            return;
+        }
+        int timeout = socket.getSoTimeout();
+        socket.setSoTimeout(TICKET_TIMEOUT);
+        try {
+            socket.getInputStream().read();
+        } catch (SocketTimeoutException expected) {
+        } finally {
+            socket.setSoTimeout(timeout);
+        }
+    }
+
+    /**
+     * Open the specified number of connections one after the other, as they all use the same {@link SSLContext} the
+     * session from the previous connection can be resumed.
+     */
+    private void runResumption(int connections) throws IOException {
+        LatencyRecorder full = new LatencyRecorder();
+        LatencyRecorder resumed = new LatencyRecorder();
+
+        for (int i = 0; i < connections; i++) {
+            long start = System.nanoTime();
+            long startMillis = System.currentTimeMillis();
+            SSLSocket socket = handshake();
+            try {
+                long time = System.nanoTime() - start;
+
+                if (HandshakeMetrics.isResumed(socket.getSession(), startMillis)) {
+                    resumed.record(time);
+                } else {
+                    full.record(time);
+                }
+                readSessionTickets(socket);
+            } finally {
+                socket.close();
+            }
+        }
+
+        System.out.println(String.format("Connections %d resumed %d hit rate %.1f%%", connections, resumed.getCount(), 100.0 * resumed.getCount() / connections));
+        System.out.println(String.format("Full handshake (connect + handshake) %s", full.summary()));
+        System.out.println(String.format("Resumed handshake (connect + handshake) %s", resumed.summary()));
+    }
 
     /**
      * @param args
@@ -40,46 +246,213 @@ public class SSLClient {
     public static void main(String[] args) throws Exception {
         int port = DEFAULT_PORT;
         String ciphers = null;
+        int connections = 1;
+        int sessionCacheSize = -1;
+        int sessionTimeout = -1;
+        int threads = 0;
+        int rate = 0;
+        int duration = 10;
+        boolean keepAlive = false;
+        boolean resume = false;
+        int poolSize = 0;
+        int[] pipelineDepths = null;
+        int messageSize = 64;
+        long poolIdleTimeout = 60000;
+        String file = null;
+        int requests = 1;
+        long metricsInterval = 0;
+        String[] protocols = null;
+        String[] serverNames = null;
+        boolean matrix = false;
+        String[] keystores = { "rsa.keystore", "ec.keystore", "dsa.keystore" };
+        DataTransfer.Builder dataTransferBuilder = DataTransfer.builder();
+        SecureRandomSupplier.Builder secureRandomBuilder = SecureRandomSupplier.builder();
         for (String current : args) {
             if (current.startsWith("ciphers=")) {
                 ciphers = current.substring(8);
             } else if (current.startsWith("port=")) {
                 port = Integer.parseInt(current.substring(5));
+            } else if (current.startsWith("connections=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    connections = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("threads=")) {
+                String temp = current.substring(8);
+                if (temp.length() > 0) {
+                    threads = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("rate=")) {
+                String temp = current.substring(5);
+                if (temp.length() > 0) {
+                    rate = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("duration=")) {
+                String temp = current.substring(9);
+                if (temp.length() > 0) {
+                    duration = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("keep-alive=")) {
+                keepAlive = Boolean.parseBoolean(current.substring(11));
+            } else if (current.startsWith("resume=")) {
+                resume = Boolean.parseBoolean(current.substring(7));
+            } else if (current.startsWith("pipeline=")) {
+                String temp = current.substring(9);
+                if (temp.length() > 0) {
+                    String[] depths = temp.split(",");
+                    pipelineDepths = new int[depths.length];
+                    for (int i = 0; i < depths.length; i++) {
+                        pipelineDepths[i] = Integer.parseInt(depths[i]);
+                    }
+                    dataTransferBuilder.setPipelineDepth(pipelineDepths[0]);
+                }
+            } else if (current.startsWith("message-size=")) {
+                String temp = current.substring(13);
+                if (temp.length() > 0) {
+                    messageSize = Integer.parseInt(temp);
+                    dataTransferBuilder.setMessageSize(messageSize);
+                }
+            } else if (current.startsWith("file=")) {
+                String temp = current.substring(5);
+                if (temp.length() > 0) {
+                    file = temp;
+                }
+            } else if (current.startsWith("requests=")) {
+                String temp = current.substring(9);
+                if (temp.length() > 0) {
+                    requests = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("pool=")) {
+                String temp = current.substring(5);
+                if (temp.length() > 0) {
+                    poolSize = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("pool-idle-timeout=")) {
+                String temp = current.substring(18);
+                if (temp.length() > 0) {
+                    poolIdleTimeout = Long.parseLong(temp);
+                }
+            } else if (current.startsWith("data=")) {
+                String temp = current.substring(5);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setMode(DataTransfer.Mode.valueOf(temp.toUpperCase(Locale.ENGLISH)));
+                }
+            } else if (current.startsWith("bytes=")) {
+                String temp = current.substring(6);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setBytes(Long.parseLong(temp));
+                }
+            } else if (current.startsWith("write-size=")) {
+                String temp = current.substring(11);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setWriteSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("send-buffer=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setSendBufferSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("receive-buffer=")) {
+                String temp = current.substring(15);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setReceiveBufferSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("metrics-interval=")) {
+                String temp = current.substring(17);
+                if (temp.length() > 0) {
+                    metricsInterval = Long.parseLong(temp);
+                }
+            } else if (current.startsWith("session-cache-size=")) {
+                String temp = current.substring(19);
+                if (temp.length() > 0) {
+                    sessionCacheSize = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("random=")) {
+                String temp = current.substring(7);
+                if (temp.length() > 0) {
+                    secureRandomBuilder.setAlgorithm(temp);
+                }
+            } else if (current.startsWith("random-mode=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    secureRandomBuilder.setMode(SecureRandomSupplier.Mode.valueOf(temp.toUpperCase(Locale.ENGLISH).replace('-', '_')));
+                }
+            } else if (current.startsWith("protocols=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0) {
+                    protocols = temp.split(",");
+                }
+            } else if (current.startsWith("server-name=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    serverNames = temp.split(",");
+                }
+            } else if (current.startsWith("matrix=")) {
+                String temp = current.substring(7);
+                if (temp.length() > 0) {
+                    matrix = Boolean.parseBoolean(temp);
+                }
+            } else if (current.startsWith("keystores=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0) {
+                    keystores = temp.split(",");
+                }
+            } else if (current.startsWith("session-timeout=")) {
+                String temp = current.substring(16);
+                if (temp.length() > 0) {
+                    sessionTimeout = Integer.parseInt(temp);
+                }
             }
         }
 
 
         System.out.println("Client Started");
 
+        if (matrix) {
+            new ProtocolMatrix(protocols != null ? protocols : new String[] { "TLSv1.2", "TLSv1.3" }, keystores, Math.max(threads, 1), duration).run();
+            return;
+        }
+
         SSLContext sslContext = SSLContextSupplier.builder()
-                .setProtocol("TLSv1.2")
+                // The defaults of a TLSv1.2 context exclude the TLSv1.3 cipher suites.
+                .setProtocol(protocols != null ? "TLS" : "TLSv1.2")
+                .setClientSessionCacheSize(sessionCacheSize)
+                .setClientSessionTimeout(sessionTimeout)
                 .setTrustManagerSupplier(TrustManagerSupplier.trustingSupplier())
+                .setSecureRandomSupplier(secureRandomBuilder.build())
                 .build()
                 .get();
 
-        SSLSocketFactory socketFactory = sslContext.getSocketFactory();
+        HandshakeMetrics metrics = new HandshakeMetrics("client");
+        metrics.register();
+        if (metricsInterval > 0) {
+            metrics.startDump(metricsInterval);
+        }
 
-        SSLSocket socket = (SSLSocket) socketFactory.createSocket();
-        if (ciphers != null && ciphers.length() > 0) {
-            CipherSuiteSelector cipherSuiteSelector = CipherSuiteSelector.fromString(ciphers);
-            String[] enabledCiphers = cipherSuiteSelector.evaluate(socketFactory.getSupportedCipherSuites());
-            StringBuilder sb = new StringBuilder("{");
-            for (int i = 0; i < enabledCiphers.length; i++) {
-                if (i > 0) {
-                    sb.append(", ");
-                }
-                sb.append(enabledCiphers[i]);
+        DataTransfer dataTransfer = dataTransferBuilder.build();
+        SSLClient client = new SSLClient(port, ciphers, protocols, sslContext, metrics, dataTransfer, serverNames);
+        if (poolSize > 0 && (threads < 1 || keepAlive)) {
+            throw new IllegalArgumentException("The connection pool requires threads and can not be used with keep-alive");
+        }
+        if (threads > 0) {
+            try (ConnectionPool pool = poolSize > 0 ? new ConnectionPool(client::handshake, poolSize, poolIdleTimeout) : null) {
+                new LoadGenerator(client, dataTransfer, threads, rate, duration, keepAlive, resume, pool).run();
             }
-            sb.append("}");
-            System.out.println(String.format("Enabled Ciphers '%s'", sb.toString()));
-            socket.setEnabledCipherSuites(enabledCiphers);
+        } else if (file != null) {
+            // The server should be using engine=nio with files= set.
+            client.runFile(file, requests);
+        } else if (pipelineDepths != null) {
+            // Compare each pipeline depth on a single connection, the server should be using data=framed.
+            FramedProtocol.run(client, pipelineDepths, messageSize, duration);
+        } else if (connections > 1) {
+            client.runResumption(connections);
+        } else {
+            client.run();
         }
 
-        socket.connect(new InetSocketAddress("localhost", port), 5000);
-
-        System.out.println(String.format("Have a connection to '%s' valid SSL Session '%b' selected cipher '%s'", socket.getInetAddress().getHostAddress(), socket.getSession().isValid(), socket.getSession().getCipherSuite()));
-
-        socket.close();
+        if (metricsInterval > 0) {
+            System.out.print(metrics.dump());
+        }
     }
 
 }
@@ -20,10 +20,19 @@ package com.darranl.ssl;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 
 /**
@@ -33,30 +42,164 @@ import javax.net.ssl.TrustManager;
  */
 public class SSLContextSupplier implements Supplier<SSLContext> {
 
+    private static final int KEY_MANAGERS = 0;
+    private static final int TRUST_MANAGERS = 1;
+    private static final int SECURE_RANDOM = 2;
+    private static final int INIT = 3;
+    private static final int PREWARM = 4;
+
     private final String protocol;
     private final Supplier<KeyManager[]> keyManagerSupplier;
     private final Supplier<TrustManager[]> trustManagerSupplier;
     private final Supplier<SecureRandom> secureRandomSupplier;
+    private final int serverSessionCacheSize;
+    private final int serverSessionTimeout;
+    private final int clientSessionCacheSize;
+    private final int clientSessionTimeout;
+    private final boolean parallel;
+    private final int prewarmHandshakes;
+    private final boolean reportTimings;
 
-    SSLContextSupplier(String protocol, Supplier<KeyManager[]> keyManagerSupplier, Supplier<TrustManager[]> trustManagerSupplier, Supplier<SecureRandom> secureRandomSupplier) {
+    SSLContextSupplier(String protocol, Supplier<KeyManager[]> keyManagerSupplier, Supplier<TrustManager[]> trustManagerSupplier, Supplier<SecureRandom> secureRandomSupplier,
+            int serverSessionCacheSize, int serverSessionTimeout, int clientSessionCacheSize, int clientSessionTimeout, boolean parallel,
+            int prewarmHandshakes, boolean reportTimings) {
         this.protocol = protocol;
         this.keyManagerSupplier = keyManagerSupplier;
         this.trustManagerSupplier = trustManagerSupplier;
         this.secureRandomSupplier = secureRandomSupplier;
+        this.serverSessionCacheSize = serverSessionCacheSize;
+        this.serverSessionTimeout = serverSessionTimeout;
+        this.clientSessionCacheSize = clientSessionCacheSize;
+        this.clientSessionTimeout = clientSessionTimeout;
+        this.parallel = parallel;
+        this.prewarmHandshakes = prewarmHandshakes;
+        this.reportTimings = reportTimings;
     }
 
     @Override
     public SSLContext get() {
+        long start = System.nanoTime();
+        long[] timings = new long[PREWARM + 1];
+        Supplier<KeyManager[]> keyManagers = timed(keyManagerSupplier, timings, KEY_MANAGERS);
+        Supplier<TrustManager[]> trustManagers = timed(trustManagerSupplier, timings, TRUST_MANAGERS);
+        Supplier<SecureRandom> secureRandom = timed(secureRandomSupplier, timings, SECURE_RANDOM);
         try {
-            SSLContext sslContext = SSLContext.getInstance(protocol);
+            SSLContext sslContext;
+            if (parallel) {
+                // The suppliers are independent, the key managers are usually the slowest so this thread takes the rest.
+                ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+                    Thread thread = new Thread(r, "context-startup");
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+                try {
+                    CompletableFuture<KeyManager[]> keyManagersFuture = CompletableFuture.supplyAsync(keyManagers, executor);
+                    CompletableFuture<SecureRandom> secureRandomFuture = CompletableFuture.supplyAsync(secureRandom, executor);
+                    TrustManager[] trustManagersResult = trustManagers.get();
+                    long initStart = System.nanoTime();
+                    sslContext = SSLContext.getInstance(protocol);
+                    timings[INIT] = System.nanoTime() - initStart;
+
+                    KeyManager[] keyManagersResult = keyManagersFuture.join();
+                    SecureRandom secureRandomResult = secureRandomFuture.join();
+                    initStart = System.nanoTime();
+                    sslContext.init(keyManagersResult, trustManagersResult, secureRandomResult);
+                    timings[INIT] += System.nanoTime() - initStart;
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                } finally {
+                    executor.shutdown();
+                }
+            } else {
+                KeyManager[] keyManagersResult = keyManagers.get();
+                TrustManager[] trustManagersResult = trustManagers.get();
+                SecureRandom secureRandomResult = secureRandom.get();
+                long initStart = System.nanoTime();
+                sslContext = SSLContext.getInstance(protocol);
+                sslContext.init(keyManagersResult, trustManagersResult, secureRandomResult);
+                timings[INIT] = System.nanoTime() - initStart;
+            }
+            configure(sslContext.getServerSessionContext(), serverSessionCacheSize, serverSessionTimeout);
+            configure(sslContext.getClientSessionContext(), clientSessionCacheSize, clientSessionTimeout);
+
+            if (prewarmHandshakes > 0) {
+                long prewarmStart = System.nanoTime();
+                prewarm(sslContext);
+                timings[PREWARM] = System.nanoTime() - prewarmStart;
+            }
+
+            if (reportTimings) {
+                System.out.println(String.format("SSLContext ready in %dms (%s) key managers %dms, trust managers %dms, secure random %dms, init %dms, pre-warm %dms",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), parallel ? "parallel" : "sequential",
+                        TimeUnit.NANOSECONDS.toMillis(timings[KEY_MANAGERS]), TimeUnit.NANOSECONDS.toMillis(timings[TRUST_MANAGERS]),
+                        TimeUnit.NANOSECONDS.toMillis(timings[SECURE_RANDOM]), TimeUnit.NANOSECONDS.toMillis(timings[INIT]),
+                        TimeUnit.NANOSECONDS.toMillis(timings[PREWARM])));
+            }
 
-            sslContext.init(keyManagerSupplier.get(), trustManagerSupplier.get(), secureRandomSupplier.get());
             return sslContext;
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    private static <T> Supplier<T> timed(Supplier<T> supplier, long[] timings, int phase) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return supplier.get();
+            } finally {
+                timings[phase] = System.nanoTime() - start;
+            }
+        };
+    }
+
+    /**
+     * Perform handshakes in memory against the new context so the classes, providers and JIT are warm before the first
+     * client connects, a failure is reported but does not prevent the context being used. The aliases chosen are not
+     * recorded as these are not client handshakes.
+     */
+    private void prewarm(SSLContext serverContext) throws NoSuchAlgorithmException, KeyManagementException {
+        SSLContext clientContext = SSLContext.getInstance(protocol);
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+        KeyManagerSupplier.setRecording(false);
+        try {
+            for (int i = 0; i < prewarmHandshakes; i++) {
+                LoopbackHandshake.handshake(serverContext, clientContext, null);
+            }
+        } catch (SSLException e) {
+            System.out.println(String.format("Unable to pre-warm the SSLContext (%s)", e.getMessage()));
+        } finally {
+            KeyManagerSupplier.setRecording(true);
+        }
+
+        // The sessions from the pre-warm handshakes should not be resumed or count towards the cache size.
+        SSLSessionContext sessionContext = serverContext.getServerSessionContext();
+        if (sessionContext != null) {
+            for (byte[] id : Collections.list(sessionContext.getIds())) {
+                SSLSession session = sessionContext.getSession(id);
+                if (session != null) {
+                    session.invalidate();
+                }
+            }
+        }
+    }
+
+    private static void configure(SSLSessionContext sessionContext, int cacheSize, int timeout) {
+        if (sessionContext == null) {
+            return;
+        }
+        if (cacheSize >= 0) {
+            sessionContext.setSessionCacheSize(cacheSize);
+        }
+        if (timeout >= 0) {
+            sessionContext.setSessionTimeout(timeout);
+        }
+    }
+
     static Builder builder() {
         return new Builder();
     }
@@ -66,6 +209,13 @@ public class SSLContextSupplier implements Supplier<SSLContext> {
         private Supplier<KeyManager[]> keyManagerSupplier = KeyManagerSupplier.nullSupplier();
         private Supplier<TrustManager[]> trustManagerSupplier = TrustManagerSupplier.nullSupplier();
         private Supplier<SecureRandom> secureRandomSupplier = SecureRandomSupplier.nullSupplier();
+        private int serverSessionCacheSize = -1;
+        private int serverSessionTimeout = -1;
+        private int clientSessionCacheSize = -1;
+        private int clientSessionTimeout = -1;
+        private boolean parallel;
+        private int prewarmHandshakes;
+        private boolean reportTimings;
 
         Builder setProtocol(final String protocol) {
             this.protocol = protocol;
@@ -91,8 +241,77 @@ public class SSLContextSupplier implements Supplier<SSLContext> {
             return this;
         }
 
+        /**
+         * Set the maximum number of sessions cached for server side connections, {@code 0} means no limit and a
+         * negative value leaves the provider default in place.
+         */
+        Builder setServerSessionCacheSize(final int serverSessionCacheSize) {
+            this.serverSessionCacheSize = serverSessionCacheSize;
+
+            return this;
+        }
+
+        /**
+         * Set the timeout in seconds of sessions cached for server side connections, {@code 0} means no limit and a
+         * negative value leaves the provider default in place.
+         */
+        Builder setServerSessionTimeout(final int serverSessionTimeout) {
+            this.serverSessionTimeout = serverSessionTimeout;
+
+            return this;
+        }
+
+        /**
+         * Set the maximum number of sessions cached for client side connections, {@code 0} means no limit and a
+         * negative value leaves the provider default in place.
+         */
+        Builder setClientSessionCacheSize(final int clientSessionCacheSize) {
+            this.clientSessionCacheSize = clientSessionCacheSize;
+
+            return this;
+        }
+
+        /**
+         * Set the timeout in seconds of sessions cached for client side connections, {@code 0} means no limit and a
+         * negative value leaves the provider default in place.
+         */
+        Builder setClientSessionTimeout(final int clientSessionTimeout) {
+            this.clientSessionTimeout = clientSessionTimeout;
+
+            return this;
+        }
+
+        /**
+         * Set if the key manager, trust manager and {@link SecureRandom} suppliers should be called in parallel.
+         */
+        Builder setParallel(final boolean parallel) {
+            this.parallel = parallel;
+
+            return this;
+        }
+
+        /**
+         * Set the number of in memory handshakes to perform against each new server context before it is returned.
+         */
+        Builder setPrewarmHandshakes(final int prewarmHandshakes) {
+            this.prewarmHandshakes = prewarmHandshakes;
+
+            return this;
+        }
+
+        /**
+         * Set if the time taken by each phase of creating the context should be reported.
+         */
+        Builder setReportTimings(final boolean reportTimings) {
+            this.reportTimings = reportTimings;
+
+            return this;
+        }
+
         Supplier<SSLContext> build() {
-            return new SSLContextSupplier(protocol, keyManagerSupplier, trustManagerSupplier, secureRandomSupplier);
+            return new SSLContextSupplier(protocol, keyManagerSupplier, trustManagerSupplier, secureRandomSupplier,
+                    serverSessionCacheSize, serverSessionTimeout, clientSessionCacheSize, clientSessionTimeout, parallel,
+                    prewarmHandshakes, reportTimings);
         }
     }
 
@@ -0,0 +1,580 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A non-blocking alternative to {@link SSLServer} using a {@link Selector} and one {@link SSLEngine} per connection.
+ *
+ * All network I/O happens on the thread calling {@link #run()}, only the delegated tasks of the engines are passed to
+ * the supplied {@link Executor}. The {@link SSLContext} supplier is called for each new connection so should be cheap,
+ * e.g. a {@link ReloadableSSLContextSupplier}.
+ *
+ * The network and application buffers of each connection are borrowed from a {@link BufferPool} only while the
+ * connection has data to process, an idle connection holds no buffers.
+ *
+ * Connections are closed once the handshake completes unless a {@link FileServer} is supplied, in which case the
+ * connection remains open to request files.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class SSLEngineServer {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final int port;
+    private final String ciphers;
+    private final String[] protocols;
+    private final Supplier<SSLContext> sslContextSupplier;
+    private final Supplier<Executor> taskExecutorSupplier;
+    private final HandshakeMetrics metrics;
+    private final BufferPool bufferPool;
+    private final AdmissionControl admissionControl;
+    private final ConnectionTimeouts timeouts;
+    private final EventLog eventLog;
+    private final FileServer fileServer;
+
+    private final Queue<Connection> tasksComplete = new ConcurrentLinkedQueue<>();
+    /**
+     * Timeouts which have expired, these are passed from the timer thread to be handled by the selector thread.
+     */
+    private final Queue<Runnable> timeoutsExpired = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private Executor taskExecutor;
+    private volatile boolean running = true;
+
+    SSLEngineServer(int port, String ciphers, String[] protocols, Supplier<SSLContext> sslContextSupplier, Supplier<Executor> taskExecutorSupplier, HandshakeMetrics metrics,
+            BufferPool bufferPool, AdmissionControl admissionControl, ConnectionTimeouts timeouts, EventLog eventLog,
+            FileServer fileServer) {
+        this.port = port;
+        this.ciphers = ciphers;
+        this.protocols = protocols;
+        this.sslContextSupplier = sslContextSupplier;
+        this.taskExecutorSupplier = taskExecutorSupplier;
+        this.metrics = metrics;
+        this.bufferPool = bufferPool;
+        this.admissionControl = admissionControl;
+        this.timeouts = timeouts;
+        this.eventLog = eventLog;
+        this.fileServer = fileServer;
+    }
+
+    void run() throws IOException {
+        // The SSLContext is obtained for each connection so it can be replaced without replacing the listener.
+        EnabledCipherSuites enabledCipherSuites = new EnabledCipherSuites(ciphers);
+        enabledCipherSuites.get(sslContextSupplier.get());
+
+        taskExecutor = taskExecutorSupplier.get();
+        admissionControl.setExecutor(taskExecutor);
+        selector = Selector.open();
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port), admissionControl.getBacklog());
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            System.out.println("Waiting for clients");
+            while (running) {
+                selector.select();
+
+                // A failure of one connection is handled by that connection, nothing a client does may end this loop.
+                Connection ready;
+                while ((ready = tasksComplete.poll()) != null) {
+                    ready.advance();
+                }
+                Runnable expired;
+                while ((expired = timeoutsExpired.poll()) != null) {
+                    expired.run();
+                }
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptAll(enabledCipherSuites, serverChannel);
+                    } else if (key.isValid()) {
+                        ((Connection) key.attachment()).process(key);
+                    }
+                }
+            }
+        } finally {
+            serverChannel.close();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stop the server, {@link #run()} returns once the current iteration of the selector loop completes and all
+     * connections have been closed.
+     */
+    void stop() {
+        running = false;
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void acceptAll(EnabledCipherSuites enabledCipherSuites, ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                accept(enabledCipherSuites, channel);
+            }
+        } catch (IOException e) {
+            // e.g. out of file descriptors, the pending connections are accepted on the next select.
+            System.out.println(String.format("Accept failed (%s)", e.getMessage()));
+        }
+    }
+
+    private void accept(EnabledCipherSuites enabledCipherSuites, SocketChannel channel) {
+        String host = "unknown";
+        boolean admitted = false;
+        Connection connection = null;
+        try {
+            host = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            if (admissionControl.tryAdmit() == false) {
+                eventLog.log(EventLog.Type.REJECTED, host, "admission");
+                // Reset rather than close gracefully so the client fails fast.
+                channel.socket().setSoLinger(true, 0);
+                channel.close();
+                return;
+            }
+            admitted = true;
+            channel.configureBlocking(false);
+
+            SSLContext sslContext = sslContextSupplier.get();
+            SSLEngine engine = sslContext.createSSLEngine();
+            engine.setUseClientMode(false);
+            String[] enabledCiphers = enabledCipherSuites.get(sslContext);
+            if (enabledCiphers != null) {
+                engine.setEnabledCipherSuites(enabledCiphers);
+            }
+            if (protocols != null) {
+                engine.setEnabledProtocols(protocols);
+            }
+
+            connection = new Connection(channel, engine, host);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException | RuntimeException e) {
+            // The client may have reset the connection before it was accepted.
+            eventLog.log(EventLog.Type.FAILED, host, "accept " + e.getMessage());
+            if (connection != null) {
+                connection.close();
+            } else {
+                if (admitted) {
+                    admissionControl.complete();
+                }
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return;
+        }
+
+        connection.start();
+    }
+
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final String host;
+        private final long acceptNanos = System.nanoTime();
+        private final long acceptMillis = System.currentTimeMillis();
+
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+
+        private SelectionKey key;
+        private boolean handshakeComplete;
+        private boolean admitted = true;
+        private boolean closed;
+
+        private StringBuilder fileName;
+        private FileServer.Transfer transfer;
+
+        /**
+         * The last time data was read or written, written by the selector thread and read by the timer thread to
+         * decide if the connection is idle.
+         */
+        private volatile long lastActiveNanos = acceptNanos;
+        private final TimerWheel.Timeout handshakeDeadline;
+        private volatile TimerWheel.Timeout idleCheck;
+
+        Connection(SocketChannel channel, SSLEngine engine, String host) {
+            this.channel = channel;
+            this.engine = engine;
+            this.host = host;
+
+            handshakeDeadline = timeouts.handshakeDeadline(() -> expired(this::handshakeTimedOut));
+        }
+
+        void start() {
+            try {
+                engine.beginHandshake();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            advance();
+        }
+
+        void process(SelectionKey key) {
+            try {
+                if (key.isReadable()) {
+                    int read = channel.read(netIn());
+                    if (read < 0) {
+                        engine.closeInbound();
+                    } else if (read > 0) {
+                        lastActiveNanos = System.nanoTime();
+                    }
+                }
+                advance();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Drive the engine as far as possible without blocking, afterwards the interest set is updated to resume from
+         * the point the engine stopped.
+         *
+         * A connection closed while its delegated tasks were running, e.g. by a timeout, is not advanced.
+         */
+        void advance() {
+            if (closed) {
+                return;
+            }
+            try {
+                advanceEngine();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            } finally {
+                releaseIdle();
+            }
+        }
+
+        private void advanceEngine() throws IOException {
+            while (true) {
+                if (flush() == false) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+
+                if (engine.isOutboundDone()) {
+                    close();
+                    return;
+                }
+
+                HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+                switch (handshakeStatus) {
+                    case NEED_WRAP:
+                        engine.wrap(EMPTY, netOut());
+                        break;
+                    case NEED_TASK:
+                        key.interestOps(0);
+                        runDelegatedTasks();
+                        return;
+                    case FINISHED:
+                    case NOT_HANDSHAKING:
+                        if (handshakeComplete == false) {
+                            handshakeComplete = true;
+                            ConnectionTimeouts.cancel(handshakeDeadline);
+                            // The idle timeout only applies once the handshake is complete, a stalled handshake is
+                            // ended by the handshake deadline.
+                            idleCheck = timeouts.idleCheck(this::checkIdle, timeouts.getIdleTimeout());
+                            releaseAdmission();
+                            metrics.handshakeComplete(acceptNanos, acceptMillis, engine.getSession());
+                            log();
+                            if (fileServer == null) {
+                                engine.closeOutbound();
+                            }
+                        } else if (transfer != null) {
+                            wrapTransfer();
+                        } else if (unwrap() == false) {
+                            return;
+                        }
+                        break;
+                    default:
+                        // NEED_UNWRAP and from Java 9 NEED_UNWRAP_AGAIN.
+                        if (unwrap() == false) {
+                            return;
+                        }
+                }
+            }
+        }
+
+        /**
+         * Unwrap from the buffered network data.
+         *
+         * @return {@code true} if the engine made progress, {@code false} if more network data is required.
+         */
+        private boolean unwrap() throws IOException {
+            ByteBuffer in = netIn();
+            // Application data is only read for file requests, so the buffer is returned immediately.
+            ByteBuffer appIn = bufferPool.acquire(engine.getSession().getApplicationBufferSize());
+            SSLEngineResult result;
+            try {
+                in.flip();
+                result = engine.unwrap(in, appIn);
+                in.compact();
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    request(appIn);
+                }
+            } finally {
+                bufferPool.release(appIn);
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                if (engine.isInboundDone()) {
+                    engine.closeOutbound();
+                    return true;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                return false;
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED && engine.isOutboundDone() == false) {
+                engine.closeOutbound();
+            }
+
+            return true;
+        }
+
+        /**
+         * Read a file request from application data and start the transfer of the file once the name is complete.
+         */
+        private void request(ByteBuffer appIn) throws IOException {
+            if (fileServer == null) {
+                return;
+            }
+            if (fileName == null) {
+                fileName = new StringBuilder();
+            }
+            if (FileServer.readName(fileName, appIn)) {
+                transfer = fileServer.open(fileName.toString());
+                fileName.setLength(0);
+            }
+            if (appIn.hasRemaining()) {
+                throw new IOException("File requested before the previous file was sent");
+            }
+        }
+
+        /**
+         * Wrap the next record of the file being transferred, the content is passed to the engine straight from the
+         * mapped or direct buffer.
+         */
+        private void wrapTransfer() throws IOException {
+            long allocated = fileServer.allocatedBytes();
+            SSLEngineResult result = engine.wrap(transfer.sources(), netOut());
+            fileServer.wrapped(result.bytesConsumed(), fileServer.allocatedBytes() - allocated);
+
+            if (transfer.isComplete()) {
+                eventLog.log(EventLog.Type.FILE, host, transfer.getName(), String.valueOf(transfer.getLength()));
+                transfer.close();
+                transfer = null;
+            }
+        }
+
+        private boolean flush() throws IOException {
+            if (netOut != null && netOut.position() > 0) {
+                netOut.flip();
+                if (channel.write(netOut) > 0) {
+                    lastActiveNanos = System.nanoTime();
+                }
+                netOut.compact();
+            }
+
+            return netOut == null || netOut.position() == 0;
+        }
+
+        private ByteBuffer netIn() {
+            if (netIn == null) {
+                netIn = bufferPool.acquire(engine.getSession().getPacketBufferSize());
+            }
+            return netIn;
+        }
+
+        private ByteBuffer netOut() {
+            if (netOut == null) {
+                netOut = bufferPool.acquire(engine.getSession().getPacketBufferSize());
+            }
+            return netOut;
+        }
+
+        /**
+         * Return the network buffers to the pool if they do not hold any data.
+         */
+        private void releaseIdle() {
+            if (netIn != null && netIn.position() == 0) {
+                bufferPool.release(netIn);
+                netIn = null;
+            }
+            if (netOut != null && netOut.position() == 0) {
+                bufferPool.release(netOut);
+                netOut = null;
+            }
+        }
+
+        /**
+         * The connection no longer counts as a handshake in progress, called once the handshake completes or the
+         * connection is closed.
+         */
+        private void releaseAdmission() {
+            if (admitted) {
+                admitted = false;
+                admissionControl.complete();
+            }
+        }
+
+        /**
+         * Called by the timer thread, rather than rescheduling the idle check on every read or write the check is
+         * rescheduled for the remaining time if there has been activity since it was scheduled.
+         */
+        private void checkIdle() {
+            long remaining = timeouts.getIdleTimeout() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActiveNanos);
+            if (remaining > 0) {
+                idleCheck = timeouts.idleCheck(this::checkIdle, remaining);
+            } else {
+                expired(this::idleTimedOut);
+            }
+        }
+
+        private void expired(Runnable handler) {
+            timeoutsExpired.add(handler);
+            selector.wakeup();
+        }
+
+        private void handshakeTimedOut() {
+            if (closed == false && handshakeComplete == false) {
+                timeouts.handshakeTimedOut();
+                fail(new SocketTimeoutException("Handshake timed out"));
+            }
+        }
+
+        private void idleTimedOut() {
+            if (closed == false) {
+                timeouts.idleTimedOut();
+                fail(new SocketTimeoutException("Idle timed out"));
+            }
+        }
+
+        private void runDelegatedTasks() {
+            Runnable tasks = () -> {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                tasksComplete.add(this);
+                selector.wakeup();
+            };
+
+            try {
+                taskExecutor.execute(tasks);
+            } catch (RejectedExecutionException e) {
+                tasks.run();
+            }
+        }
+
+        private void log() {
+            SSLSession session = engine.getSession();
+            eventLog.log(EventLog.Type.HANDSHAKE, host, String.valueOf(session.isValid()), session.getCipherSuite());
+        }
+
+        private void fail(Exception e) {
+            if (closed) {
+                return;
+            }
+            // As with the blocking server a failed handshake is only logged as FAILED, there is no valid session to log.
+            if (handshakeComplete == false) {
+                metrics.handshakeFailed(e);
+                eventLog.log(EventLog.Type.FAILED, host, "handshake " + e.getMessage());
+            } else {
+                eventLog.log(EventLog.Type.FAILED, host, String.valueOf(e.getMessage()));
+            }
+            close();
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ConnectionTimeouts.cancel(handshakeDeadline);
+            ConnectionTimeouts.cancel(idleCheck);
+            releaseAdmission();
+            if (key != null) {
+                key.cancel();
+            }
+            if (netIn != null) {
+                bufferPool.release(netIn);
+                netIn = null;
+            }
+            if (netOut != null) {
+                bufferPool.release(netOut);
+                netOut = null;
+            }
+            if (transfer != null) {
+                try {
+                    transfer.close();
+                } catch (IOException e) {
+                    eventLog.log(EventLog.Type.FAILED, host, "file " + e.getMessage());
+                }
+                transfer = null;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                eventLog.log(EventLog.Type.FAILED, host, "close " + e.getMessage());
+            }
+        }
+
+    }
+
+}
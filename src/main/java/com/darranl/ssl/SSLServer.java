@@ -18,15 +18,26 @@
 package com.darranl.ssl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
 
-import org.wildfly.security.ssl.CipherSuiteSelector;
-
 /**
  * Main entry point to open up a server socket for SSL connections.
  *
@@ -35,46 +46,235 @@ import org.wildfly.security.ssl.CipherSuiteSelector;
 public class SSLServer {
 
     private static final int DEFAULT_PORT = 2222;
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+    private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
     private final int port;
     private final String ciphers;
+    private final String[] protocols;
     private final Supplier<SSLContext> sslContextSupplier;
+    private final Supplier<Executor> handshakeExecutorSupplier;
+    private final HandshakeMetrics metrics;
+    private final DataTransfer dataTransfer;
+    private final boolean keepAlive;
+    private final int acceptors;
+    private final boolean reusePort;
+    private final AdmissionControl admissionControl;
+    private final ConnectionTimeouts timeouts;
+    private final EventLog eventLog;
 
-    private SSLServer(int port, String ciphers, Supplier<SSLContext> sslContextSupplier) {
+    private SSLServer(int port, String ciphers, String[] protocols, Supplier<SSLContext> sslContextSupplier, Supplier<Executor> handshakeExecutorSupplier, HandshakeMetrics metrics,
+            DataTransfer dataTransfer, boolean keepAlive, int acceptors, boolean reusePort, AdmissionControl admissionControl,
+            ConnectionTimeouts timeouts, EventLog eventLog) {
         this.port = port;
         this.ciphers = ciphers;
+        this.protocols = protocols;
         this.sslContextSupplier = sslContextSupplier;
+        this.handshakeExecutorSupplier = handshakeExecutorSupplier;
+        this.metrics = metrics;
+        this.dataTransfer = dataTransfer;
+        this.keepAlive = keepAlive;
+        this.acceptors = acceptors;
+        this.reusePort = reusePort;
+        this.admissionControl = admissionControl;
+        this.timeouts = timeouts;
+        this.eventLog = eventLog;
     }
 
     private void run() throws IOException {
-        SSLContext sslContext = sslContextSupplier.get();
+        Executor handshakeExecutor = handshakeExecutorSupplier.get();
+        admissionControl.setExecutor(handshakeExecutor);
 
-        SSLServerSocketFactory serverSocketFactory = sslContext.getServerSocketFactory();
+        // With a single acceptor SO_REUSEPORT is not needed, otherwise each acceptor binds to the same port if the
+        // JDK and platform support it or to consecutive ports starting from the configured port if not.
+        boolean shared = acceptors > 1 && reusePort && reusePortSupported();
+        if (acceptors > 1 && shared == false) {
+            System.out.println(String.format("Acceptors listening on ports %d-%d", port, port + acceptors - 1));
+        }
 
-        SSLServerSocket serverSocket = (SSLServerSocket) serverSocketFactory.createServerSocket(port);
+        ServerSocket[] serverSockets = new ServerSocket[acceptors];
+        for (int i = 0; i < acceptors; i++) {
+            serverSockets[i] = bind(shared ? port : port + i, shared);
+        }
 
-        if (ciphers != null && ciphers.length() > 0) {
-            CipherSuiteSelector cipherSuiteSelector = CipherSuiteSelector.fromString(ciphers);
-            String[] enabledCiphers = cipherSuiteSelector.evaluate(serverSocket.getSupportedCipherSuites());
-            StringBuilder sb = new StringBuilder("{");
-            for (int i = 0; i < enabledCiphers.length; i++) {
-                if (i > 0) {
-                    sb.append(", ");
+        for (int i = 1; i < acceptors; i++) {
+            ServerSocket serverSocket = serverSockets[i];
+            Thread acceptor = new Thread(() -> {
+                try {
+                    accept(serverSocket, handshakeExecutor);
+                } catch (IOException e) {
+                    System.out.println(String.format("Acceptor for port %d failed (%s)", serverSocket.getLocalPort(), e.getMessage()));
                 }
-                sb.append(enabledCiphers[i]);
-            }
-            sb.append("}");
-            System.out.println(String.format("Enabled Ciphers '%s'", sb.toString()));
-            serverSocket.setEnabledCipherSuites(enabledCiphers);
+            }, "acceptor-" + i);
+            acceptor.start();
         }
+        accept(serverSockets[0], handshakeExecutor);
+    }
+
+    private ServerSocket bind(int port, boolean shared) throws IOException {
+        ServerSocket serverSocket;
+        if (shared) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.setOption(SO_REUSEPORT, Boolean.TRUE);
+            serverSocket = channel.socket();
+        } else {
+            serverSocket = new ServerSocket();
+        }
+        dataTransfer.configure(serverSocket);
+        serverSocket.bind(new InetSocketAddress(port), admissionControl.getBacklog());
+
+        return serverSocket;
+    }
+
+    private void accept(ServerSocket serverSocket, Executor handshakeExecutor) throws IOException {
+        // The SSLContext is obtained for each connection so it can be replaced without replacing the listener, each
+        // acceptor caches the enabled cipher suites independently so they do not contend.
+        EnabledCipherSuites enabledCipherSuites = new EnabledCipherSuites(ciphers);
+        enabledCipherSuites.get(sslContextSupplier.get());
 
+        System.out.println("Waiting for clients");
         while (true) {
-            System.out.println("Waiting for a client");
-            SSLSocket client = (SSLSocket) serverSocket.accept();
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    throw e;
+                }
+                // e.g. out of file descriptors while holding many connections, back off rather than ending the acceptor.
+                System.out.println(String.format("Accept failed (%s)", e.getMessage()));
+                LockSupport.parkNanos(ACCEPT_BACKOFF_NANOS);
+                continue;
+            }
+            long acceptNanos = System.nanoTime();
+            long acceptMillis = System.currentTimeMillis();
+            if (admissionControl.tryAdmit() == false) {
+                eventLog.log(EventLog.Type.REJECTED, socket.getInetAddress().getHostAddress(), "admission");
+                reject(socket);
+                continue;
+            }
+
+            SSLSocket client;
+            try {
+                SSLContext sslContext = sslContextSupplier.get();
+                client = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+                client.setUseClientMode(false);
+                eventLog.log(EventLog.Type.ACCEPTED, socket.getInetAddress().getHostAddress());
+                String[] enabledCiphers = enabledCipherSuites.get(sslContext);
+                if (enabledCiphers != null) {
+                    client.setEnabledCipherSuites(enabledCiphers);
+                }
+                if (protocols != null) {
+                    client.setEnabledProtocols(protocols);
+                }
+            } catch (IOException e) {
+                // The client may have reset the connection already, only this connection is dropped.
+                eventLog.log(EventLog.Type.FAILED, socket.getInetAddress().getHostAddress(), "accept " + e.getMessage());
+                admissionControl.complete();
+                reject(socket);
+                continue;
+            }
+            // A blocking read can not be interrupted so the underlying socket is closed if the deadline passes, the
+            // deadline starts now so it also covers time waiting for a worker.
+            TimerWheel.Timeout handshakeDeadline = timeouts.handshakeDeadline(() -> {
+                timeouts.handshakeTimedOut();
+                eventLog.log(EventLog.Type.FAILED, socket.getInetAddress().getHostAddress(), "handshake timeout");
+                reject(socket);
+            });
+
+            try {
+                handshakeExecutor.execute(() -> handshake(client, acceptNanos, acceptMillis, handshakeDeadline));
+            } catch (RejectedExecutionException e) {
+                eventLog.log(EventLog.Type.REJECTED, client.getInetAddress().getHostAddress(), "handshake queue full");
+                ConnectionTimeouts.cancel(handshakeDeadline);
+                admissionControl.rejected();
+                close(client);
+            }
+        }
+    }
+
+    private void handshake(SSLSocket client, long acceptNanos, long acceptMillis, TimerWheel.Timeout handshakeDeadline) {
+        try {
+            client.startHandshake();
+            metrics.handshakeComplete(acceptNanos, acceptMillis, client.getSession());
+        } catch (IOException e) {
+            metrics.handshakeFailed(e);
+            eventLog.log(EventLog.Type.FAILED, client.getInetAddress().getHostAddress(), "handshake " + e.getMessage());
+            close(client);
+            return;
+        } finally {
+            ConnectionTimeouts.cancel(handshakeDeadline);
+            admissionControl.complete();
+        }
 
-            System.out.println(String.format("Have a connection from '%s' valid SSL Session '%b' selected cipher '%s'", client.getInetAddress().getHostAddress(), client.getSession().isValid(), client.getSession().getCipherSuite()));
+        try {
+            // The idle timeout only applies once the handshake is complete, until then a stalled handshake is ended by
+            // the handshake deadline and counted as a handshake timeout.
+            client.setSoTimeout(timeouts.getIdleTimeout());
+            String host = client.getInetAddress().getHostAddress();
+            eventLog.log(EventLog.Type.HANDSHAKE, host, String.valueOf(client.getSession().isValid()), client.getSession().getCipherSuite());
+            if (dataTransfer.isEnabled() && client.getSession().isValid()) {
+                DataTransfer.Result result = dataTransfer.serve(client);
+                eventLog.log(EventLog.Type.DATA, host, client.getSession().getCipherSuite(), result.toString());
+            }
+            if (keepAlive && client.getSession().isValid()) {
+                // Hold the connection, and the thread handling it, until the client closes it.
+                InputStream in = client.getInputStream();
+                byte[] discard = new byte[256];
+                while (in.read(discard) >= 0) {
+                }
+            }
+        } catch (IOException e) {
+            if (e instanceof SocketTimeoutException) {
+                timeouts.idleTimedOut();
+            }
+            eventLog.log(EventLog.Type.FAILED, client.getInetAddress().getHostAddress(), "connection " + e.getMessage());
+        } finally {
+            close(client);
+        }
+    }
 
+    /**
+     * Reject a connection over the admission limits, the connection is reset rather than closed gracefully so neither
+     * side is left in TIME_WAIT and the client fails fast.
+     */
+    private void reject(Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+            socket.close();
+        } catch (IOException e) {
+            eventLog.log(EventLog.Type.FAILED, socket.getInetAddress().getHostAddress(), "reject " + e.getMessage());
+        }
+    }
+
+    private void close(SSLSocket client) {
+        try {
             client.close();
+        } catch (IOException e) {
+            eventLog.log(EventLog.Type.FAILED, client.getInetAddress().getHostAddress(), "close " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@code StandardSocketOptions.SO_REUSEPORT} is only available from Java 9.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean reusePortSupported() {
+        if (SO_REUSEPORT == null) {
+            return false;
+        }
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
         }
     }
 
@@ -85,8 +285,36 @@ public class SSLServer {
         int port = DEFAULT_PORT;
         String ciphers = null;
         String keystore = "rsa.keystore";
+        String keystoreType = "JKS";
         String password = "keystore_password";
         String fixedAlias = null;
+        int workers = 0;
+        int queue = 0;
+        String engine = "blocking";
+        boolean virtualThreads = false;
+        boolean keepAlive = false;
+        int sessionCacheSize = -1;
+        int sessionTimeout = -1;
+        boolean keystoreCache = false;
+        boolean sniIndex = false;
+        EventLog.Builder eventLogBuilder = EventLog.builder();
+        boolean parallelStartup = false;
+        int prewarmHandshakes = 0;
+        KeyManagerSupplier.KeyLoading keyLoading = KeyManagerSupplier.KeyLoading.EAGER;
+        long reloadInterval = 0;
+        long metricsInterval = 0;
+        String[] protocols = null;
+        AdmissionControl.Builder admissionControlBuilder = AdmissionControl.builder();
+        long handshakeTimeout = 0;
+        int idleTimeout = 0;
+        int bufferPoolSize = 1024;
+        String files = null;
+        FileServer.Mode fileMode = FileServer.Mode.MAPPED;
+        boolean fileAllocations = false;
+        int acceptors = 1;
+        boolean reusePort = true;
+        DataTransfer.Builder dataTransferBuilder = DataTransfer.builder();
+        SecureRandomSupplier.Builder secureRandomBuilder = SecureRandomSupplier.builder();
         for (String current : args) {
             if (current.startsWith("ciphers=")) {
                 ciphers = current.substring(8);
@@ -97,28 +325,276 @@ public class SSLServer {
                 }
             } else if (current.startsWith("keystore=")) {
                 keystore = current.substring(9);
+            } else if (current.startsWith("keystore-cache=")) {
+                keystoreCache = Boolean.parseBoolean(current.substring(15));
+            } else if (current.startsWith("keystore-type=")) {
+                String temp = current.substring(14);
+                if (temp.length() > 0) {
+                    keystoreType = temp;
+                }
+            } else if (current.startsWith("key-loading=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    keyLoading = KeyManagerSupplier.KeyLoading.valueOf(temp.toUpperCase(Locale.ENGLISH));
+                }
+            } else if (current.startsWith("parallel-startup=")) {
+                parallelStartup = Boolean.parseBoolean(current.substring(17));
+            } else if (current.startsWith("prewarm=")) {
+                String temp = current.substring(8);
+                if (temp.length() > 0) {
+                    prewarmHandshakes = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("event-log=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0 && "stdout".equals(temp) == false) {
+                    eventLogBuilder.setPath(temp);
+                }
+            } else if (current.startsWith("event-log-size=")) {
+                String temp = current.substring(15);
+                if (temp.length() > 0) {
+                    eventLogBuilder.setCapacity(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("event-sample=")) {
+                String temp = current.substring(13);
+                if (temp.length() > 0) {
+                    eventLogBuilder.setSampleRate(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("sni=")) {
+                sniIndex = Boolean.parseBoolean(current.substring(4));
+            } else if (current.startsWith("metrics-interval=")) {
+                String temp = current.substring(17);
+                if (temp.length() > 0) {
+                    metricsInterval = Long.parseLong(temp);
+                }
             } else if (current.startsWith("password=")) {
                 password = current.substring(9);
             } else if (current.startsWith("port=")) {
                 port = Integer.parseInt(current.substring(5));
+            } else if (current.startsWith("data=")) {
+                String temp = current.substring(5);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setMode(DataTransfer.Mode.valueOf(temp.toUpperCase(Locale.ENGLISH)));
+                }
+            } else if (current.startsWith("bytes=")) {
+                String temp = current.substring(6);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setBytes(Long.parseLong(temp));
+                }
+            } else if (current.startsWith("write-size=")) {
+                String temp = current.substring(11);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setWriteSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("send-buffer=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setSendBufferSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("receive-buffer=")) {
+                String temp = current.substring(15);
+                if (temp.length() > 0) {
+                    dataTransferBuilder.setReceiveBufferSize(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("acceptors=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0) {
+                    acceptors = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("reuse-port=")) {
+                String temp = current.substring(11);
+                if (temp.length() > 0) {
+                    reusePort = Boolean.parseBoolean(temp);
+                }
+            } else if (current.startsWith("buffer-pool=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    bufferPoolSize = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("files=")) {
+                String temp = current.substring(6);
+                if (temp.length() > 0) {
+                    files = temp;
+                }
+            } else if (current.startsWith("file-allocations=")) {
+                fileAllocations = Boolean.parseBoolean(current.substring(17));
+            } else if (current.startsWith("file-mode=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0) {
+                    fileMode = FileServer.Mode.valueOf(temp.toUpperCase(Locale.ENGLISH));
+                }
+            } else if (current.startsWith("engine=")) {
+                String temp = current.substring(7);
+                if (temp.length() > 0) {
+                    engine = temp;
+                }
+            } else if (current.startsWith("reload-interval=")) {
+                String temp = current.substring(16);
+                if (temp.length() > 0) {
+                    reloadInterval = Long.parseLong(temp);
+                }
+            } else if (current.startsWith("session-cache-size=")) {
+                String temp = current.substring(19);
+                if (temp.length() > 0) {
+                    sessionCacheSize = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("random=")) {
+                String temp = current.substring(7);
+                if (temp.length() > 0) {
+                    secureRandomBuilder.setAlgorithm(temp);
+                }
+            } else if (current.startsWith("random-mode=")) {
+                String temp = current.substring(12);
+                if (temp.length() > 0) {
+                    secureRandomBuilder.setMode(SecureRandomSupplier.Mode.valueOf(temp.toUpperCase(Locale.ENGLISH).replace('-', '_')));
+                }
+            } else if (current.startsWith("protocols=")) {
+                String temp = current.substring(10);
+                if (temp.length() > 0) {
+                    protocols = temp.split(",");
+                }
+            } else if (current.startsWith("max-handshakes=")) {
+                String temp = current.substring(15);
+                if (temp.length() > 0) {
+                    admissionControlBuilder.setMaxInProgress(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("handshake-rate=")) {
+                String temp = current.substring(15);
+                if (temp.length() > 0) {
+                    admissionControlBuilder.setRate(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("handshake-burst=")) {
+                String temp = current.substring(16);
+                if (temp.length() > 0) {
+                    admissionControlBuilder.setBurst(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("handshake-timeout=")) {
+                String temp = current.substring(18);
+                if (temp.length() > 0) {
+                    handshakeTimeout = Long.parseLong(temp);
+                }
+            } else if (current.startsWith("idle-timeout=")) {
+                String temp = current.substring(13);
+                if (temp.length() > 0) {
+                    idleTimeout = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("backlog=")) {
+                String temp = current.substring(8);
+                if (temp.length() > 0) {
+                    admissionControlBuilder.setBacklog(Integer.parseInt(temp));
+                }
+            } else if (current.startsWith("session-timeout=")) {
+                String temp = current.substring(16);
+                if (temp.length() > 0) {
+                    sessionTimeout = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("keep-alive=")) {
+                keepAlive = Boolean.parseBoolean(current.substring(11));
+            } else if (current.startsWith("virtual-threads=")) {
+                virtualThreads = Boolean.parseBoolean(current.substring(16));
+            } else if (current.startsWith("workers=")) {
+                String temp = current.substring(8);
+                if (temp.length() > 0) {
+                    workers = Integer.parseInt(temp);
+                }
+            } else if (current.startsWith("queue=")) {
+                String temp = current.substring(6);
+                if (temp.length() > 0) {
+                    queue = Integer.parseInt(temp);
+                }
             }
         }
 
-        SSLServer server = new SSLServer(port, ciphers, SSLContextSupplier.builder()
-                .setProtocol("TLSv1.2")
-                .setKeyManagerSupplier(KeyManagerSupplier.builder()
-                        .setAlgorithm("SunX509")
-                        .setPassword(password.toCharArray())
-                        .setFixedAlias(fixedAlias)
-                        .setKeyStoreSupplier(KeyStoreSupplier.builder()
-                                .setType("JKS")
-                                .setPath(keystore)
-                                .setPassword(password.toCharArray())
-                                .build())
-                        .build())
-                .build());
-
-        server.run();
+        Supplier<Executor> handshakeExecutorSupplier = HandshakeExecutorSupplier.callerRunsSupplier();
+        if (virtualThreads) {
+            handshakeExecutorSupplier = HandshakeExecutorSupplier.virtualThreadSupplier();
+        } else if (workers > 0) {
+            HandshakeExecutorSupplier.Builder builder = HandshakeExecutorSupplier.builder().setThreads(workers);
+            if (queue > 0) {
+                builder.setQueueDepth(queue);
+            }
+            handshakeExecutorSupplier = builder.build();
+        }
+
+        Supplier<KeyStore> keyStoreSupplier = KeyStoreSupplier.builder()
+                .setType(keystoreType)
+                .setPath(keystore)
+                .setPassword(password.toCharArray())
+                .setCaching(keystoreCache || reloadInterval > 0)
+                .build();
+
+        EventLog eventLog = eventLogBuilder.build();
+        Runtime.getRuntime().addShutdownHook(new Thread(eventLog::close, "event-log-close"));
+
+        KeyManagerSupplier keyManagerSupplier = KeyManagerSupplier.builder()
+                .setAlgorithm("SunX509")
+                .setPassword(password.toCharArray())
+                .setFixedAlias(fixedAlias)
+                .setSniIndex(sniIndex)
+                .setKeyLoading(keyLoading)
+                .setReportTimings(true)
+                .setEventLog(eventLog)
+                .setKeyStoreSupplier(keyStoreSupplier)
+                .build();
+
+        ReloadableSSLContextSupplier.Builder sslContextSupplierBuilder = ReloadableSSLContextSupplier.builder()
+                .setSSLContextSupplier(SSLContextSupplier.builder()
+                        // The defaults of a TLSv1.2 context exclude the TLSv1.3 cipher suites.
+                        .setProtocol(protocols != null ? "TLS" : "TLSv1.2")
+                        .setServerSessionCacheSize(sessionCacheSize)
+                        .setServerSessionTimeout(sessionTimeout)
+                        .setKeyManagerSupplier(keyManagerSupplier)
+                        .setSecureRandomSupplier(secureRandomBuilder.build())
+                        .setParallel(parallelStartup)
+                        .setPrewarmHandshakes(prewarmHandshakes)
+                        .setReportTimings(true)
+                        .build());
+        if (reloadInterval > 0) {
+            sslContextSupplierBuilder.setCheckInterval(reloadInterval)
+                    .setChangeCheck(((CachingKeyStoreSupplier) keyStoreSupplier)::reloadIfChanged);
+        }
+        ReloadableSSLContextSupplier sslContextSupplier = sslContextSupplierBuilder.build();
+        sslContextSupplier.register();
+
+        HandshakeMetrics metrics = new HandshakeMetrics("server");
+        metrics.setAliasChoices(keyManagerSupplier::getAliasChoices);
+        metrics.setEventLog(eventLog::getStatistics);
+        metrics.register();
+        if (metricsInterval > 0) {
+            metrics.startDump(metricsInterval);
+        }
+
+        DataTransfer dataTransfer = dataTransferBuilder.build();
+        AdmissionControl admissionControl = admissionControlBuilder.build();
+        metrics.setAdmission(admissionControl::getStatistics);
+        ConnectionTimeouts timeouts = new ConnectionTimeouts(handshakeTimeout, idleTimeout);
+        metrics.setTimeouts(timeouts::getStatistics);
+        if ("nio".equals(engine)) {
+            if (dataTransfer.isEnabled()) {
+                throw new IllegalArgumentException("Data transfer is only supported by the blocking engine");
+            }
+            if (acceptors > 1) {
+                throw new IllegalArgumentException("Multiple acceptors are only supported by the blocking engine");
+            }
+            if (keepAlive) {
+                throw new IllegalArgumentException("Keep alive is only supported by the blocking engine");
+            }
+            BufferPool bufferPool = new BufferPool(bufferPoolSize);
+            metrics.setBufferPool(bufferPool::getStatistics);
+            FileServer fileServer = null;
+            if (files != null) {
+                fileServer = new FileServer(Paths.get(files), fileMode, bufferPool, fileAllocations);
+                metrics.setFiles(fileServer::getStatistics);
+            }
+            new SSLEngineServer(port, ciphers, protocols, sslContextSupplier, handshakeExecutorSupplier, metrics, bufferPool, admissionControl, timeouts, eventLog,
+                    fileServer).run();
+        } else if ("blocking".equals(engine)) {
+            if (files != null) {
+                throw new IllegalArgumentException("File serving is only supported by the nio engine");
+            }
+            new SSLServer(port, ciphers, protocols, sslContextSupplier, handshakeExecutorSupplier, metrics, dataTransfer, keepAlive, acceptors, reusePort, admissionControl, timeouts, eventLog).run();
+        } else {
+            throw new IllegalArgumentException(String.format("Unknown engine '%s'", engine));
+        }
     }
 
 }
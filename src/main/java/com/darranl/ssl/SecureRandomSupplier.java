@@ -17,18 +17,189 @@
  */
 package com.darranl.ssl;
 
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
 import java.util.function.Supplier;
 
 /**
+ * A {@link Supplier} of the {@link SecureRandom} used to initialise an {@link javax.net.ssl.SSLContext}.
  *
+ * The context only accepts a single instance so where the instance would otherwise be contended by
+ * concurrent handshakes it can be backed by one instance per thread or by a fixed set of stripes.
  *
  * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
  */
-public class SecureRandomSupplier {
+public class SecureRandomSupplier implements Supplier<SecureRandom> {
+
+    private final String algorithm;
+    private final Mode mode;
+    private final int stripes;
+
+    private SecureRandomSupplier(String algorithm, Mode mode, int stripes) {
+        this.algorithm = algorithm;
+        this.mode = mode;
+        this.stripes = stripes;
+    }
+
+    @Override
+    public SecureRandom get() {
+        switch (mode) {
+            case THREAD_LOCAL:
+                ThreadLocal<SecureRandom> threadLocal = ThreadLocal.withInitial(this::create);
+                return new DelegatingSecureRandom(threadLocal::get, threadLocal.get().getAlgorithm());
+            case STRIPED:
+                SecureRandom[] secureRandoms = new SecureRandom[stripes];
+                for (int i = 0; i < stripes; i++) {
+                    secureRandoms[i] = create();
+                }
+                return new DelegatingSecureRandom(() -> secureRandoms[(int) (Thread.currentThread().getId() % stripes)], secureRandoms[0].getAlgorithm());
+            default:
+                return create();
+        }
+    }
+
+    private SecureRandom create() {
+        try {
+            SecureRandom secureRandom = algorithm != null ? SecureRandom.getInstance(algorithm) : new SecureRandom();
+            // Force the seeding now rather than during the first handshake.
+            secureRandom.nextBytes(new byte[1]);
+
+            return secureRandom;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
     static Supplier<SecureRandom> nullSupplier() {
         return () -> null;
     }
 
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * How the {@link SecureRandom} instances are shared between threads.
+     */
+    enum Mode {
+
+        /**
+         * A single instance shared by all threads.
+         */
+        SHARED,
+
+        /**
+         * An instance for each thread, with virtual threads this is an instance for each handshake so {@link #STRIPED}
+         * is preferable.
+         */
+        THREAD_LOCAL,
+
+        /**
+         * A fixed number of instances selected by the ID of the calling thread.
+         */
+        STRIPED;
+
+    }
+
+    static class Builder {
+
+        private String algorithm;
+        private Mode mode = Mode.SHARED;
+        private int stripes = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Set the algorithm e.g. {@code NativePRNGNonBlocking}, {@code DRBG} or {@code SHA1PRNG}, by default the
+         * algorithm of {@link SecureRandom#SecureRandom()} is used.
+         */
+        Builder setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+
+            return this;
+        }
+
+        Builder setMode(Mode mode) {
+            this.mode = mode;
+
+            return this;
+        }
+
+        /**
+         * Set the number of instances used by {@link Mode#STRIPED}, defaults to the number of available processors.
+         */
+        Builder setStripes(int stripes) {
+            this.stripes = stripes;
+
+            return this;
+        }
+
+        Supplier<SecureRandom> build() {
+            return new SecureRandomSupplier(algorithm, mode, stripes);
+        }
+
+    }
+
+    /**
+     * A {@link SecureRandom} passing all calls to the instance obtained for the calling thread.
+     *
+     * {@link SecureRandom} synchronizes calls to a {@link SecureRandomSpi} it does not know to be thread safe so the
+     * methods used by a handshake are overridden to call the delegate directly.
+     */
+    private static class DelegatingSecureRandom extends SecureRandom {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Supplier<SecureRandom> delegate;
+        private final String algorithm;
+
+        DelegatingSecureRandom(Supplier<SecureRandom> delegate, String algorithm) {
+            super(new DelegatingSpi(delegate), null);
+            this.delegate = delegate;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            delegate.get().nextBytes(bytes);
+        }
+
+        @Override
+        public byte[] generateSeed(int numBytes) {
+            return delegate.get().generateSeed(numBytes);
+        }
+
+    }
+
+    private static class DelegatingSpi extends SecureRandomSpi {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Supplier<SecureRandom> delegate;
+
+        DelegatingSpi(Supplier<SecureRandom> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineSetSeed(byte[] seed) {
+            delegate.get().setSeed(seed);
+        }
+
+        @Override
+        protected void engineNextBytes(byte[] bytes) {
+            delegate.get().nextBytes(bytes);
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(int numBytes) {
+            return delegate.get().generateSeed(numBytes);
+        }
+
+    }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * An index from the host names of the certificates in a {@link KeyStore} to the alias to use for each host name and key
+ * type, built once when the key store is loaded so an alias can be selected from the SNI host name of a handshake
+ * without scanning the aliases.
+ *
+ * The host names of a certificate are its DNS subject alternative names or, if it has none, the CN of its subject. A
+ * wildcard name such as {@code *.example.com} matches exactly one additional label, where a host name matches both an
+ * exact and a wildcard name the exact name is used. Where more than one alias has the same host name and key type the
+ * first in the key store is used.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class SniIndex {
+
+    private static final int DNS_NAME = 2;
+
+    /**
+     * Host name to key type to alias.
+     */
+    private final Map<String, Map<String, String>> exact = new HashMap<>();
+    /**
+     * The domain following the {@code *.} of a wildcard name to key type to alias.
+     */
+    private final Map<String, Map<String, String>> wildcard = new HashMap<>();
+    private int aliases;
+
+    private SniIndex() {
+    }
+
+    /**
+     * Build an index of the key entries in the key store.
+     */
+    static SniIndex build(KeyStore keyStore) throws KeyStoreException {
+        SniIndex index = new SniIndex();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isKeyEntry(alias) && keyStore.getCertificate(alias) instanceof X509Certificate) {
+                index.add(alias, (X509Certificate) keyStore.getCertificate(alias));
+            }
+        }
+
+        return index;
+    }
+
+    private void add(String alias, X509Certificate certificate) {
+        String keyType = certificate.getPublicKey().getAlgorithm();
+        for (String name : hostNames(certificate)) {
+            Map<String, Map<String, String>> names = exact;
+            if (name.startsWith("*.")) {
+                names = wildcard;
+                name = name.substring(2);
+            }
+            names.computeIfAbsent(name, n -> new HashMap<>()).putIfAbsent(keyType, alias);
+        }
+        aliases++;
+    }
+
+    /**
+     * @return the number of aliases indexed.
+     */
+    int size() {
+        return aliases;
+    }
+
+    /**
+     * Choose the alias for the host name requested by the client.
+     *
+     * @param keyType the key type requested by the server, for TLSv1.2 this may be qualified with the signature
+     *        algorithm of the certificate e.g. {@code EC_RSA}, only the key algorithm is matched.
+     * @param socket the socket being negotiated or {@code null}.
+     * @param engine the engine being negotiated or {@code null}.
+     * @return the alias or {@code null} if the client did not request a host name or none matched.
+     */
+    String chooseServerAlias(String keyType, Socket socket, SSLEngine engine) {
+        SSLSession handshakeSession = null;
+        if (engine != null) {
+            handshakeSession = engine.getHandshakeSession();
+        } else if (socket instanceof SSLSocket) {
+            handshakeSession = ((SSLSocket) socket).getHandshakeSession();
+        }
+        if (handshakeSession instanceof ExtendedSSLSession == false) {
+            return null;
+        }
+
+        for (SNIServerName current : ((ExtendedSSLSession) handshakeSession).getRequestedServerNames()) {
+            if (current instanceof SNIHostName) {
+                return chooseServerAlias(((SNIHostName) current).getAsciiName(), keyType);
+            }
+        }
+
+        return null;
+    }
+
+    String chooseServerAlias(String hostName, String keyType) {
+        String name = normalize(hostName);
+        int separator = keyType.indexOf('_');
+        String keyAlgorithm = separator > 0 ? keyType.substring(0, separator) : keyType;
+
+        Map<String, String> byKeyType = exact.get(name);
+        String alias = byKeyType != null ? byKeyType.get(keyAlgorithm) : null;
+        if (alias == null) {
+            int dot = name.indexOf('.');
+            byKeyType = dot > 0 ? wildcard.get(name.substring(dot + 1)) : null;
+            alias = byKeyType != null ? byKeyType.get(keyAlgorithm) : null;
+        }
+
+        return alias;
+    }
+
+    private static Set<String> hostNames(X509Certificate certificate) {
+        Set<String> names = new LinkedHashSet<>();
+        try {
+            Collection<List<?>> subjectAlternativeNames = certificate.getSubjectAlternativeNames();
+            if (subjectAlternativeNames != null) {
+                for (List<?> current : subjectAlternativeNames) {
+                    if (((Integer) current.get(0)).intValue() == DNS_NAME) {
+                        names.add(normalize((String) current.get(1)));
+                    }
+                }
+            }
+        } catch (CertificateParsingException e) {
+            System.out.println(String.format("Unable to read the subject alternative names of '%s' (%s)", certificate.getSubjectX500Principal(), e.getMessage()));
+        }
+
+        if (names.isEmpty()) {
+            try {
+                for (Rdn current : new LdapName(certificate.getSubjectX500Principal().getName()).getRdns()) {
+                    if ("CN".equalsIgnoreCase(current.getType())) {
+                        names.add(normalize(current.getValue().toString()));
+                    }
+                }
+            } catch (InvalidNameException e) {
+                System.out.println(String.format("Unable to read the subject of '%s' (%s)", certificate.getSubjectX500Principal(), e.getMessage()));
+            }
+        }
+
+        return names;
+    }
+
+    private static String normalize(String hostName) {
+        String name = hostName.toLowerCase(Locale.ENGLISH);
+
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+}
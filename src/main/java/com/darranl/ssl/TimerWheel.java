@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.darranl.ssl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel for large numbers of timeouts which are usually cancelled before they expire.
+ *
+ * Scheduling adds the timeout to a queue and cancelling only marks it so both are O(1) and do not contend with each
+ * other. A single daemon thread advances the wheel once per tick, moving newly scheduled timeouts into the bucket of
+ * the tick they expire on and running the expired timeouts of the current bucket, cancelled timeouts are dropped as
+ * their bucket is visited. Timeouts expire up to one tick late so tasks must be short, e.g. closing a connection or
+ * passing the expiry to another thread.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+class TimerWheel {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Only accessed by the wheel thread.
+     */
+    private long tick;
+
+    /**
+     * Construct a new timer wheel and start the thread advancing it.
+     *
+     * @param tickMillis the duration of each tick, this is the resolution of the timeouts.
+     * @param wheelSize the number of buckets, rounded up to a power of two. Timeouts longer than a full revolution of
+     *        the wheel stay in their bucket for more than one revolution.
+     * @param threadName the name of the thread advancing the wheel.
+     */
+    TimerWheel(long tickMillis, int wheelSize, String threadName) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+
+        Thread thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedule a task to run after a delay.
+     *
+     * @param task the task to run on expiry, this is called by the wheel thread.
+     * @param delayMillis the delay in milliseconds.
+     * @return the {@link Timeout} which can be used to cancel the task.
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        scheduled.add(timeout);
+
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - startNanos)) > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+
+            transferScheduled();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state == CANCELLED) {
+                continue;
+            }
+            // Never place a timeout in a tick which has already been processed.
+            long expiryTick = Math.max(timeout.deadlineNanos / tickNanos, tick);
+            int bucket = (int) (expiryTick & mask);
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+            timeout.next = buckets[bucket];
+            buckets[bucket] = timeout;
+        }
+    }
+
+    private void expire(int bucket) {
+        Timeout previous = null;
+        Timeout current = buckets[bucket];
+        while (current != null) {
+            Timeout next = current.next;
+            boolean remove;
+            if (current.state == CANCELLED) {
+                remove = true;
+            } else if (current.remainingRounds > 0) {
+                current.remainingRounds--;
+                remove = false;
+            } else {
+                remove = true;
+                if (Timeout.STATE.compareAndSet(current, PENDING, EXPIRED)) {
+                    try {
+                        current.task.run();
+                    } catch (RuntimeException e) {
+                        System.out.println(String.format("Timeout task failed (%s)", e));
+                    }
+                }
+            }
+
+            if (remove) {
+                if (previous == null) {
+                    buckets[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                current.next = null;
+            } else {
+                previous = current;
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    static class Timeout {
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile int state = PENDING;
+
+        // Only accessed by the wheel thread.
+        private long remainingRounds;
+        private Timeout next;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancel the timeout.
+         *
+         * @return {@code true} if the timeout was cancelled, {@code false} if it had already expired or been cancelled.
+         */
+        boolean cancel() {
+            return STATE.compareAndSet(this, PENDING, CANCELLED);
+        }
+
+        boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+    }
+
+}
@@ -26,6 +26,7 @@ import java.util.function.Supplier;
 
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509TrustManager;
 
 /**
@@ -37,10 +38,14 @@ public class TrustManagerSupplier implements Supplier<TrustManager[]> {
 
     private final String algorithm;
     private final Supplier<KeyStore> keyStoreSupplier;
+    private final int cacheSize;
+    private final long cacheTimeout;
 
-    private TrustManagerSupplier(String algorithm, Supplier<KeyStore> keyStoreSupplier) {
+    private TrustManagerSupplier(String algorithm, Supplier<KeyStore> keyStoreSupplier, int cacheSize, long cacheTimeout) {
         this.algorithm = algorithm;
         this.keyStoreSupplier = keyStoreSupplier;
+        this.cacheSize = cacheSize;
+        this.cacheTimeout = cacheTimeout;
     }
 
     @Override
@@ -49,7 +54,16 @@ public class TrustManagerSupplier implements Supplier<TrustManager[]> {
             TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(algorithm);
             trustManagerFactory.init(keyStoreSupplier.get());
 
-            return trustManagerFactory.getTrustManagers();
+            TrustManager[] trustManagers = trustManagerFactory.getTrustManagers();
+            if (cacheSize > 0) {
+                for (int i = 0; i < trustManagers.length; i++) {
+                    if (trustManagers[i] instanceof X509ExtendedTrustManager) {
+                        trustManagers[i] = new CachingTrustManager((X509ExtendedTrustManager) trustManagers[i], cacheSize, cacheTimeout);
+                    }
+                }
+            }
+
+            return trustManagers;
         } catch (NoSuchAlgorithmException | KeyStoreException e) {
             throw new IllegalStateException(e);
         }
@@ -92,6 +106,8 @@ public class TrustManagerSupplier implements Supplier<TrustManager[]> {
     static class Builder {
         private String algorithm = TrustManagerFactory.getDefaultAlgorithm();
         private Supplier<KeyStore> keyStoreSupplier = KeyStoreSupplier.nullSupplier();
+        private int cacheSize;
+        private long cacheTimeout = 300000;
 
         Builder setAlgorithm(String algorithm) {
             this.algorithm = algorithm;
@@ -105,8 +121,27 @@ public class TrustManagerSupplier implements Supplier<TrustManager[]> {
             return this;
         }
 
+        /**
+         * Set the maximum number of accepted certificate chains each trust manager remembers, the default of 0 means
+         * every chain is validated in full.
+         */
+        Builder setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+
+            return this;
+        }
+
+        /**
+         * Set how long in milliseconds an accepted certificate chain is remembered, defaults to 5 minutes.
+         */
+        Builder setCacheTimeout(long cacheTimeout) {
+            this.cacheTimeout = cacheTimeout;
+
+            return this;
+        }
+
         Supplier<TrustManager[]> build() {
-            return new TrustManagerSupplier(algorithm, keyStoreSupplier);
+            return new TrustManagerSupplier(algorithm, keyStoreSupplier, cacheSize, cacheTimeout);
         }
     }
 
@@ -0,0 +1,61 @@
+package com.darranl.ssl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link AdmissionControl}.
+ */
+public class AdmissionControlTest extends TestCase {
+
+    public void testUnlimited() {
+        AdmissionControl admissionControl = AdmissionControl.builder().build();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(admissionControl.tryAdmit());
+        }
+        assertEquals(Long.valueOf(1000), admissionControl.getStatistics().get("inProgress"));
+    }
+
+    public void testMaxInProgress() {
+        AdmissionControl admissionControl = AdmissionControl.builder().setMaxInProgress(2).build();
+        assertTrue(admissionControl.tryAdmit());
+        assertTrue(admissionControl.tryAdmit());
+        assertFalse(admissionControl.tryAdmit());
+
+        admissionControl.complete();
+        assertTrue(admissionControl.tryAdmit());
+        admissionControl.rejected();
+        assertTrue(admissionControl.tryAdmit());
+
+        assertEquals(Long.valueOf(1), admissionControl.getStatistics().get("rejectedInProgress"));
+        assertEquals(Long.valueOf(1), admissionControl.getStatistics().get("rejectedQueue"));
+        assertEquals(Long.valueOf(2), admissionControl.getStatistics().get("inProgress"));
+    }
+
+    public void testRate() {
+        // At one per second the bucket does not refill during the test.
+        AdmissionControl admissionControl = AdmissionControl.builder().setRate(1).setBurst(3).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(admissionControl.tryAdmit());
+            admissionControl.complete();
+        }
+        assertFalse(admissionControl.tryAdmit());
+
+        assertEquals(Long.valueOf(3), admissionControl.getStatistics().get("admitted"));
+        assertEquals(Long.valueOf(1), admissionControl.getStatistics().get("rejectedRate"));
+    }
+
+    public void testInProgressRejectionKeepsToken() {
+        AdmissionControl admissionControl = AdmissionControl.builder().setMaxInProgress(1).setRate(1).setBurst(2).build();
+        assertTrue(admissionControl.tryAdmit());
+        // Rejected by the cap, the second token of the burst must remain available.
+        assertFalse(admissionControl.tryAdmit());
+        assertFalse(admissionControl.tryAdmit());
+        admissionControl.complete();
+        assertTrue(admissionControl.tryAdmit());
+
+        assertEquals(Long.valueOf(2), admissionControl.getStatistics().get("rejectedInProgress"));
+        assertEquals(Long.valueOf(0), admissionControl.getStatistics().get("rejectedRate"));
+        assertEquals(Long.valueOf(1), admissionControl.getStatistics().get("inProgress"));
+    }
+
+}
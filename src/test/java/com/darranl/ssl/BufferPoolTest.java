@@ -0,0 +1,53 @@
+package com.darranl.ssl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link BufferPool}.
+ */
+public class BufferPoolTest extends TestCase {
+
+    public void testReuse() {
+        BufferPool pool = new BufferPool(10);
+        ByteBuffer first = pool.acquire(16709);
+        assertTrue(first.isDirect());
+        assertEquals(32768, first.capacity());
+        assertEquals(32768, pool.getInUseBytes());
+        first.put((byte) 1);
+
+        pool.release(first);
+        assertEquals(0, pool.getInUseBytes());
+        assertEquals(32768, pool.getIdleBytes());
+
+        ByteBuffer second = pool.acquire(20000);
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    public void testMaxIdle() {
+        BufferPool pool = new BufferPool(1);
+        ByteBuffer first = pool.acquire(1000);
+        ByteBuffer second = pool.acquire(1000);
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1024, pool.getIdleBytes());
+        assertEquals(Long.valueOf(1), pool.getStatistics().get("discarded"));
+    }
+
+    public void testLargeNotPooled() {
+        BufferPool pool = new BufferPool(10);
+        ByteBuffer buffer = pool.acquire(4 * 1024 * 1024);
+        assertEquals(4 * 1024 * 1024, buffer.capacity());
+        pool.release(buffer);
+
+        assertEquals(0, pool.getIdleBytes());
+        assertEquals(0, pool.getInUseBytes());
+    }
+
+}
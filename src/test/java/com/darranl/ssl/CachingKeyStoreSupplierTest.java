@@ -0,0 +1,72 @@
+package com.darranl.ssl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.util.function.Supplier;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link CachingKeyStoreSupplier}.
+ */
+public class CachingKeyStoreSupplierTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("caching", ".keystore");
+        Files.copy(Paths.get("rsa.keystore"), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testCachedUntilChanged() throws Exception {
+        Supplier<KeyStore> supplier = builder().setCheckInterval(0).build();
+        CachingKeyStoreSupplier caching = (CachingKeyStoreSupplier) supplier;
+
+        KeyStore first = supplier.get();
+        assertSame(first, supplier.get());
+        assertEquals(0, caching.getGeneration());
+
+        // Touching the file without changing the content does not trigger a reload.
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 10000));
+        assertSame(first, supplier.get());
+        assertFalse(caching.reloadIfChanged());
+
+        Files.copy(Paths.get("ec.keystore"), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 20000));
+        KeyStore second = supplier.get();
+        assertNotSame(first, second);
+        assertEquals(1, caching.getGeneration());
+        assertSame(second, supplier.get());
+    }
+
+    public void testNotCheckedWithinInterval() throws Exception {
+        Supplier<KeyStore> supplier = builder().setCheckInterval(60000).build();
+
+        KeyStore first = supplier.get();
+        Files.copy(Paths.get("ec.keystore"), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 20000));
+        assertSame(first, supplier.get());
+
+        assertTrue(((CachingKeyStoreSupplier) supplier).reloadIfChanged());
+        assertNotSame(first, supplier.get());
+    }
+
+    private KeyStoreSupplier.Builder builder() {
+        return KeyStoreSupplier.builder()
+                .setType("JKS")
+                .setPath(file.getAbsolutePath())
+                .setPassword("keystore_password".toCharArray())
+                .setCaching(true);
+    }
+
+}
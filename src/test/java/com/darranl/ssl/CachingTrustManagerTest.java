@@ -0,0 +1,197 @@
+package com.darranl.ssl;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.AlgorithmConstraints;
+import java.security.AlgorithmParameters;
+import java.security.CryptoPrimitive;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link CachingTrustManager}.
+ */
+public class CachingTrustManagerTest extends TestCase {
+
+    private X509Certificate[] rsaChain;
+    private X509Certificate[] ecChain;
+    private CountingTrustManager counting;
+
+    @Override
+    protected void setUp() throws Exception {
+        rsaChain = chain(CachingTrustManagerTest.class.getResourceAsStream("/trusted-rsa.keystore"));
+        ecChain = chain(CachingTrustManagerTest.class.getResourceAsStream("/trusted-ec.keystore"));
+        counting = new CountingTrustManager();
+    }
+
+    public void testAcceptedChainCached() throws Exception {
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 10, 60000);
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        assertEquals(1, counting.checks);
+        assertEquals(1, trustManager.getHits());
+
+        // The result for the client is not used for the server or for a different chain.
+        trustManager.checkServerTrusted(rsaChain, "RSA");
+        trustManager.checkClientTrusted(ecChain, "EC");
+        assertEquals(3, counting.checks);
+    }
+
+    public void testFailureNotCached() throws Exception {
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 10, 60000);
+        counting.fail = true;
+        for (int i = 0; i < 2; i++) {
+            try {
+                trustManager.checkClientTrusted(rsaChain, "RSA");
+                fail("Expected CertificateException");
+            } catch (CertificateException expected) {
+            }
+        }
+        assertEquals(2, counting.checks);
+        assertEquals(0, trustManager.getHits());
+    }
+
+    public void testExpired() throws Exception {
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 10, 0);
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        assertEquals(2, counting.checks);
+    }
+
+    public void testExpiredCertificateNotCached() throws Exception {
+        // The certificate in the keystore used by the server has expired.
+        X509Certificate[] expiredChain = chain(new FileInputStream("rsa.keystore"));
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 10, 60000);
+        trustManager.checkClientTrusted(expiredChain, "RSA");
+        trustManager.checkClientTrusted(expiredChain, "RSA");
+        assertEquals(2, counting.checks);
+    }
+
+    public void testMaxEntries() throws Exception {
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 1, 60000);
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        // The cache is full of unexpired entries, the new chain replaces the existing entry.
+        trustManager.checkClientTrusted(ecChain, "EC");
+        trustManager.checkClientTrusted(ecChain, "EC");
+        assertEquals(2, counting.checks);
+        assertEquals(1, trustManager.getEvictions());
+
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        assertEquals(3, counting.checks);
+        assertEquals(2, trustManager.getEvictions());
+    }
+
+    /**
+     * A result cached by one overload is not used by a check applying different constraints.
+     */
+    public void testConnectionConstraints() throws Exception {
+        CachingTrustManager trustManager = new CachingTrustManager(counting, 10, 60000);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        SSLEngine engine = sslContext.createSSLEngine();
+
+        trustManager.checkClientTrusted(rsaChain, "RSA");
+        trustManager.checkClientTrusted(rsaChain, "RSA", engine);
+        trustManager.checkClientTrusted(rsaChain, "RSA", engine);
+        assertEquals(2, counting.checks);
+
+        SSLEngine constrained = sslContext.createSSLEngine();
+        SSLParameters parameters = constrained.getSSLParameters();
+        parameters.setAlgorithmConstraints(new AlgorithmConstraints() {
+
+            @Override
+            public boolean permits(Set<CryptoPrimitive> primitives, String algorithm, AlgorithmParameters parameters) {
+                return true;
+            }
+
+            @Override
+            public boolean permits(Set<CryptoPrimitive> primitives, Key key) {
+                return true;
+            }
+
+            @Override
+            public boolean permits(Set<CryptoPrimitive> primitives, String algorithm, Key key, AlgorithmParameters parameters) {
+                return true;
+            }
+
+        });
+        constrained.setSSLParameters(parameters);
+        trustManager.checkClientTrusted(rsaChain, "RSA", constrained);
+        assertEquals(3, counting.checks);
+        assertEquals(1, trustManager.getHits());
+    }
+
+    private static X509Certificate[] chain(InputStream keyStoreStream) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = keyStoreStream) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+
+        Certificate[] chain = keyStore.getCertificateChain("test");
+
+        return Arrays.copyOf(chain, chain.length, X509Certificate[].class);
+    }
+
+    private static class CountingTrustManager extends X509ExtendedTrustManager {
+
+        private int checks;
+        private boolean fail;
+
+        private void check() throws CertificateException {
+            checks++;
+            if (fail) {
+                throw new CertificateException("Not trusted");
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            check();
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+    }
+
+}
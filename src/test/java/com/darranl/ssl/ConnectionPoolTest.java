@@ -0,0 +1,190 @@
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest extends TestCase {
+
+    private SSLServerSocket serverSocket;
+    private InetSocketAddress target;
+    private SSLContext clientContext;
+    private volatile boolean closeAfterHandshake;
+    private volatile String[] protocols = { "TLSv1.2" };
+
+    @Override
+    protected void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = ConnectionPoolTest.class.getResourceAsStream("/trusted-rsa.keystore")) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "keystore_password".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        target = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        Thread acceptor = new Thread(this::accept, "test-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        serverSocket.close();
+    }
+
+    public void testReused() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 2, 0)) {
+            SSLSocket first;
+            try (ConnectionPool.Lease lease = pool.lease(target)) {
+                assertFalse(lease.isReused());
+                first = lease.getSocket();
+                assertEquals(42, exchange(first, 42));
+            }
+            try (ConnectionPool.Lease lease = pool.lease(target)) {
+                assertTrue(lease.isReused());
+                assertSame(first, lease.getSocket());
+                assertEquals(7, exchange(lease.getSocket(), 7));
+            }
+            assertEquals(1, pool.getStatistics().get("connected").longValue());
+            assertEquals(1, pool.getStatistics().get("reused").longValue());
+            assertEquals(1, pool.getStatistics().get("idle").longValue());
+        }
+    }
+
+    /**
+     * With TLSv1.3 the server sends session tickets after the handshake, a connection returned without having read them
+     * is still healthy.
+     */
+    public void testReusedTLSv13() throws Exception {
+        protocols = new String[] { "TLSv1.3" };
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 2, 0)) {
+            SSLSocket first;
+            try (ConnectionPool.Lease lease = pool.lease(target)) {
+                first = lease.getSocket();
+                assertEquals("TLSv1.3", first.getSession().getProtocol());
+            }
+            // Allow the session tickets from the server to arrive.
+            Thread.sleep(200);
+            try (ConnectionPool.Lease lease = pool.lease(target)) {
+                assertTrue(lease.isReused());
+                assertSame(first, lease.getSocket());
+                assertEquals(7, exchange(lease.getSocket(), 7));
+            }
+            assertEquals(0, pool.getStatistics().get("stale").longValue());
+        }
+    }
+
+    public void testMaxIdle() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 1, 0)) {
+            ConnectionPool.Lease first = pool.lease(target);
+            ConnectionPool.Lease second = pool.lease(target);
+            first.close();
+            second.close();
+            assertTrue(second.getSocket().isClosed());
+            assertEquals(1, pool.getStatistics().get("discarded").longValue());
+            assertEquals(1, pool.getStatistics().get("idle").longValue());
+        }
+    }
+
+    public void testInvalidated() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 2, 0)) {
+            ConnectionPool.Lease lease = pool.lease(target);
+            lease.invalidate();
+            lease.close();
+            assertTrue(lease.getSocket().isClosed());
+            assertFalse(pool.lease(target).isReused());
+        }
+    }
+
+    public void testStale() throws Exception {
+        closeAfterHandshake = true;
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 2, 0)) {
+            pool.lease(target).close();
+            // Allow the close_notify from the server to arrive.
+            Thread.sleep(200);
+            assertFalse(pool.lease(target).isReused());
+            assertEquals(1, pool.getStatistics().get("stale").longValue());
+        }
+    }
+
+    public void testIdleEviction() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(this::connect, 2, 50)) {
+            ConnectionPool.Lease lease = pool.lease(target);
+            lease.close();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pool.getStatistics().get("evicted") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, pool.getStatistics().get("evicted").longValue());
+            assertEquals(0, pool.getStatistics().get("idle").longValue());
+            assertTrue(lease.getSocket().isClosed());
+        }
+    }
+
+    private SSLSocket connect(Socket plain, InetSocketAddress target) throws IOException {
+        plain.connect(target, 5000);
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(plain, target.getHostString(), target.getPort(), true);
+        socket.setEnabledProtocols(protocols);
+        socket.startHandshake();
+
+        return socket;
+    }
+
+    private static int exchange(SSLSocket socket, int value) throws IOException {
+        socket.getOutputStream().write(value);
+        socket.getOutputStream().flush();
+
+        return socket.getInputStream().read();
+    }
+
+    private void accept() {
+        while (true) {
+            SSLSocket socket;
+            try {
+                socket = (SSLSocket) serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread handler = new Thread(() -> echo(socket), "test-echo");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void echo(SSLSocket socket) {
+        try (SSLSocket closing = socket) {
+            closing.startHandshake();
+            if (closeAfterHandshake) {
+                return;
+            }
+            InputStream in = closing.getInputStream();
+            OutputStream out = closing.getOutputStream();
+            int read;
+            while ((read = in.read()) >= 0) {
+                out.write(read);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.security.KeyStore;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link DataTransfer}.
+ */
+public class DataTransferTest extends TestCase {
+
+    private static final long BYTES = 100000;
+
+    private SSLServerSocket serverSocket;
+    private SSLContext clientContext;
+    private final BlockingQueue<Object> serverResults = new ArrayBlockingQueue<>(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = DataTransferTest.class.getResourceAsStream("/trusted-rsa.keystore")) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "keystore_password".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        serverSocket.close();
+    }
+
+    public void testEcho() throws Exception {
+        assertEquals(BYTES * 2, transfer(DataTransfer.Mode.ECHO));
+        assertEquals(BYTES * 2, serverBytes());
+    }
+
+    public void testSink() throws Exception {
+        assertEquals(BYTES, transfer(DataTransfer.Mode.SINK));
+        // The client only completes once the server has acknowledged every byte.
+        assertEquals(BYTES, serverBytes());
+    }
+
+    public void testSource() throws Exception {
+        assertEquals(BYTES, transfer(DataTransfer.Mode.SOURCE));
+        assertEquals(BYTES, serverBytes());
+    }
+
+    public void testAggregate() throws Exception {
+        DataTransfer dataTransfer = builder(DataTransfer.Mode.SOURCE).build();
+        serve(builder(DataTransfer.Mode.SOURCE).build());
+        try (SSLSocket socket = connect()) {
+            dataTransfer.drive(socket);
+        }
+        assertTrue(dataTransfer.aggregate(), dataTransfer.aggregate().startsWith(String.format("Aggregate transferred %d bytes", BYTES)));
+    }
+
+    public void testMegabytesPerSecond() {
+        assertEquals(1.0, DataTransfer.megabytesPerSecond(1024 * 1024, TimeUnit.SECONDS.toNanos(1)), 0.0001);
+        assertEquals(50.0, DataTransfer.megabytesPerSecond(100 * 1024 * 1024, TimeUnit.SECONDS.toNanos(2)), 0.0001);
+    }
+
+    private long transfer(DataTransfer.Mode mode) throws Exception {
+        serve(builder(mode).build());
+        try (SSLSocket socket = connect()) {
+            return builder(mode).build().drive(socket).getBytes();
+        }
+    }
+
+    private long serverBytes() throws Exception {
+        Object result = serverResults.poll(10, TimeUnit.SECONDS);
+        if (result instanceof Exception) {
+            throw (Exception) result;
+        }
+        assertNotNull("Server result", result);
+
+        return ((DataTransfer.Result) result).getBytes();
+    }
+
+    private static DataTransfer.Builder builder(DataTransfer.Mode mode) {
+        return DataTransfer.builder()
+                .setMode(mode)
+                .setBytes(BYTES)
+                .setWriteSize(4096);
+    }
+
+    /**
+     * Serve a single connection on a background thread, the result is made available from {@link #serverBytes()}.
+     */
+    private void serve(DataTransfer dataTransfer) {
+        Thread server = new Thread(() -> {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                serverResults.add(dataTransfer.serve(socket));
+            } catch (IOException e) {
+                serverResults.add(e);
+            }
+        }, "test-server");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    private SSLSocket connect() throws IOException {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        socket.setSoTimeout(10000);
+        socket.startHandshake();
+
+        return socket;
+    }
+
+}
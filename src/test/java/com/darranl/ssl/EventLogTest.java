@@ -0,0 +1,97 @@
+package com.darranl.ssl;
+
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link EventLog}.
+ */
+public class EventLogTest extends TestCase {
+
+    public void testWritten() throws Exception {
+        StringWriter writer = new StringWriter();
+        EventLog eventLog = new EventLog(256, 1, writer);
+        for (int i = 0; i < 100; i++) {
+            eventLog.log(EventLog.Type.HANDSHAKE, "127.0.0." + i, "true", "TLS_AES_128_GCM_SHA256");
+        }
+        eventLog.log(EventLog.Type.FAILED, "127.0.0.1", "Connection reset");
+
+        assertEquals(101, awaitWritten(eventLog, 101));
+        String[] lines = writer.toString().split(System.lineSeparator());
+        assertEquals(101, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" HANDSHAKE host=127.0.0.0 valid=true cipher=TLS_AES_128_GCM_SHA256"));
+        assertTrue(lines[lines.length - 1], lines[lines.length - 1].endsWith(" FAILED host=127.0.0.1 reason=Connection reset"));
+    }
+
+    public void testDropped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StringWriter writer = new StringWriter() {
+
+            @Override
+            public StringWriter append(CharSequence csq) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.append(csq);
+            }
+
+        };
+        EventLog eventLog = new EventLog(4, 1, writer);
+        eventLog.log(EventLog.Type.ACCEPTED, "first");
+        // Once the writer thread is blocked on the first event the buffer holds another four.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            eventLog.log(EventLog.Type.ACCEPTED, "next");
+            if (eventLog.getStatistics().get("dropped") > 0) {
+                break;
+            }
+            Thread.sleep(1);
+        }
+        long dropped = eventLog.getStatistics().get("dropped");
+        assertTrue(dropped > 0);
+
+        release.countDown();
+        assertEquals(5, awaitWritten(eventLog, 5));
+    }
+
+    public void testSampled() throws Exception {
+        EventLog eventLog = new EventLog(16, 0, new StringWriter());
+        eventLog.log(EventLog.Type.HANDSHAKE, "127.0.0.1", "true", "TLS_AES_128_GCM_SHA256");
+        eventLog.log(EventLog.Type.ALIAS, "RSA", "test");
+        // Failures are never sampled.
+        eventLog.log(EventLog.Type.REJECTED, "127.0.0.1", "admission");
+
+        assertEquals(1, awaitWritten(eventLog, 1));
+        assertEquals(2, eventLog.getStatistics().get("sampled").longValue());
+    }
+
+    public void testClose() throws Exception {
+        StringWriter writer = new StringWriter();
+        EventLog eventLog = new EventLog(256, 1, writer);
+        for (int i = 0; i < 10; i++) {
+            eventLog.log(EventLog.Type.ACCEPTED, "127.0.0." + i);
+        }
+        // Every event logged before the close has been written once it returns.
+        eventLog.close();
+        assertEquals(10, eventLog.getStatistics().get("written").longValue());
+        assertEquals(10, writer.toString().split(System.lineSeparator()).length);
+    }
+
+    /**
+     * Wait for the expected number of events to be written, then a little longer in case more are written.
+     */
+    private static long awaitWritten(EventLog eventLog, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (eventLog.getStatistics().get("written") < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        return eventLog.getStatistics().get("written");
+    }
+
+}
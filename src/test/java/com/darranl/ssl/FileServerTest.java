@@ -0,0 +1,143 @@
+package com.darranl.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link FileServer}.
+ */
+public class FileServerTest extends TestCase {
+
+    private Path directory;
+    private byte[] content;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("files");
+        // Larger than the read buffer so the channel mode reads more than once.
+        content = new byte[200000];
+        new Random(1).nextBytes(content);
+        Files.write(directory.resolve("content.bin"), content);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.delete(directory.resolve("content.bin"));
+        Files.delete(directory);
+    }
+
+    public void testMapped() throws Exception {
+        FileServer fileServer = new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(4));
+        assertTrue(Arrays.equals(content, drain(fileServer.open("content.bin"), content.length)));
+        assertEquals(1, fileServer.getStatistics().get("served").longValue());
+        assertEquals(0, fileServer.getStatistics().get("copiedBytes").longValue());
+    }
+
+    public void testChannel() throws Exception {
+        BufferPool bufferPool = new BufferPool(4);
+        FileServer fileServer = new FileServer(directory, FileServer.Mode.CHANNEL, bufferPool);
+        assertTrue(Arrays.equals(content, drain(fileServer.open("content.bin"), content.length)));
+        assertEquals(1, fileServer.getStatistics().get("served").longValue());
+        assertEquals(content.length, fileServer.getStatistics().get("copiedBytes").longValue());
+        assertEquals(0, bufferPool.getStatistics().get("inUseBytes").longValue());
+    }
+
+    public void testNotFound() throws Exception {
+        FileServer fileServer = new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(4));
+        assertEquals(0, drain(fileServer.open("missing.bin"), -1).length);
+        Path outside = Files.createTempFile("outside", ".bin");
+        try {
+            assertEquals(0, drain(fileServer.open("../" + outside.getFileName()), -1).length);
+        } finally {
+            Files.delete(outside);
+        }
+        assertEquals(0, drain(fileServer.open(""), -1).length);
+        assertEquals(3, fileServer.getStatistics().get("notFound").longValue());
+        assertEquals(0, fileServer.getStatistics().get("served").longValue());
+    }
+
+    public void testSymbolicLink() throws Exception {
+        FileServer fileServer = new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(4));
+        Path outside = Files.createTempFile("outside", ".bin");
+        Path escape = Files.createSymbolicLink(directory.resolve("escape.bin"), outside);
+        Path inside = Files.createSymbolicLink(directory.resolve("inside.bin"), directory.resolve("content.bin"));
+        try {
+            // A link pointing outside of the directory must not be followed, a link within it can be.
+            assertEquals(0, drain(fileServer.open("escape.bin"), -1).length);
+            assertTrue(Arrays.equals(content, drain(fileServer.open("inside.bin"), content.length)));
+        } finally {
+            Files.delete(inside);
+            Files.delete(escape);
+            Files.delete(outside);
+        }
+        assertEquals(1, fileServer.getStatistics().get("notFound").longValue());
+        assertEquals(1, fileServer.getStatistics().get("served").longValue());
+    }
+
+    public void testAllocations() throws Exception {
+        // Measuring the heap allocated has a cost of its own so is only done when asked for.
+        FileServer fileServer = new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(4));
+        assertEquals(0, fileServer.allocatedBytes());
+        assertFalse(fileServer.getStatistics().containsKey("heapBytes"));
+
+        fileServer = new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(4), true);
+        assertEquals(0, fileServer.getStatistics().get("heapBytes").longValue());
+    }
+
+    public void testReadName()throws Exception {
+        StringBuilder name = new StringBuilder();
+        ByteBuffer first = ByteBuffer.wrap("dir/con".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(FileServer.readName(name, first));
+        ByteBuffer second = ByteBuffer.wrap("tent.bin\nnext".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(FileServer.readName(name, second));
+        assertEquals("dir/content.bin", name.toString());
+        assertEquals(4, second.remaining());
+
+        char[] tooLong = new char[2048];
+        Arrays.fill(tooLong, 'a');
+        try {
+            FileServer.readName(new StringBuilder(), ByteBuffer.wrap(new String(tooLong).getBytes(StandardCharsets.US_ASCII)));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Consume the sources of the transfer a record at a time as the engine would, checking the header.
+     */
+    private static byte[] drain(FileServer.Transfer transfer, long expectedLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] record = new byte[16384];
+        while (transfer.isComplete() == false) {
+            int space = record.length;
+            int used = 0;
+            for (ByteBuffer source : transfer.sources()) {
+                int count = Math.min(source.remaining(), space - used);
+                if (header.hasRemaining()) {
+                    count = Math.min(count, header.remaining());
+                    byte[] bytes = new byte[count];
+                    source.get(bytes);
+                    header.put(bytes);
+                } else {
+                    source.get(record, used, count);
+                    used += count;
+                }
+            }
+            out.write(record, 0, used);
+        }
+        transfer.close();
+        assertEquals(expectedLength, header.getLong(0));
+
+        return out.toByteArray();
+    }
+
+}
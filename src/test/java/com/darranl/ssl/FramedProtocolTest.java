@@ -0,0 +1,137 @@
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link FramedProtocol}.
+ */
+public class FramedProtocolTest extends TestCase {
+
+    private SSLServerSocket serverSocket;
+    private SSLContext clientContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = FramedProtocolTest.class.getResourceAsStream("/trusted-rsa.keystore")) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "keystore_password".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        serverSocket.close();
+    }
+
+    public void testPipelined() throws Exception {
+        for (int depth : new int[] { 1, 16 }) {
+            CompletableFuture<Long> served = serve();
+            try (SSLSocket socket = connect()) {
+                FramedProtocol.Result result = FramedProtocol.drive(socket, depth, 100, 1000, Long.MAX_VALUE);
+                assertEquals(1000, result.getRequests());
+                assertEquals(1000, result.getLatency().getCount());
+                assertEquals(2 * 1000 * 104, result.getBytes());
+
+                // The connection is still usable after the outstanding responses have been read.
+                assertEquals(10, FramedProtocol.drive(socket, depth, 10, 10, Long.MAX_VALUE).getRequests());
+            }
+            assertEquals(2 * 1000 * 104 + 2 * 10 * 14, served.get(10, TimeUnit.SECONDS).longValue());
+        }
+    }
+
+    public void testDuration() throws Exception {
+        CompletableFuture<Long> served = serve();
+        try (SSLSocket socket = connect()) {
+            FramedProtocol.Result result = FramedProtocol.drive(socket, 8, 64, Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(200));
+            assertTrue(result.getRequests() > 0);
+            assertTrue(result.getRequestsPerSecond() > 0);
+        }
+        served.get(10, TimeUnit.SECONDS);
+    }
+
+    public void testInvalidLength() throws Exception {
+        CompletableFuture<Long> served = serve();
+        try (SSLSocket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff });
+            out.flush();
+            try {
+                served.get(10, TimeUnit.SECONDS);
+                fail("Expected IOException");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    /**
+     * The writer must be stopped when the reader fails, even when it is waiting for space in the pipeline.
+     */
+    public void testReaderFailure() throws Exception {
+        Thread server = new Thread(() -> {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                InputStream in = socket.getInputStream();
+                in.read();
+                OutputStream out = socket.getOutputStream();
+                out.write(new byte[] { 0, 0, 0, 1 });
+                out.flush();
+                while (in.read() >= 0) {
+                }
+            } catch (IOException ignored) {
+            }
+        }, "test-server");
+        server.setDaemon(true);
+        server.start();
+
+        try (SSLSocket socket = connect()) {
+            FramedProtocol.drive(socket, 1, 10, Long.MAX_VALUE, Long.MAX_VALUE);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse("Writer still running", "framed-writer".equals(thread.getName()));
+        }
+    }
+
+    private SSLSocket connect() throws IOException {
+        return (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+    }
+
+    private CompletableFuture<Long> serve() {
+        CompletableFuture<Long> served = new CompletableFuture<>();
+        Thread server = new Thread(() -> {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                served.complete(FramedProtocol.serve(socket));
+            } catch (IOException e) {
+                served.completeExceptionally(e);
+            }
+        }, "test-server");
+        server.setDaemon(true);
+        server.start();
+
+        return served;
+    }
+
+}
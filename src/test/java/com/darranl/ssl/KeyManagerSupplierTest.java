@@ -0,0 +1,73 @@
+package com.darranl.ssl;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509KeyManager;
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link KeyManagerSupplier}.
+ */
+public class KeyManagerSupplierTest extends TestCase {
+
+    private static final char[] PASSWORD = "keystore_password".toCharArray();
+
+    private KeyStore keyStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = KeyManagerSupplierTest.class.getResourceAsStream("/trusted-rsa.keystore")) {
+            keyStore.load(is, PASSWORD);
+        }
+    }
+
+    public void testAliasChoices() throws Exception {
+        KeyManagerSupplier supplier = KeyManagerSupplier.builder()
+                .setAlgorithm("SunX509")
+                .setKeyStoreSupplier(() -> keyStore)
+                .setPassword(PASSWORD)
+                .build();
+        X509KeyManager keyManager = (X509KeyManager) supplier.get()[0];
+        X500Principal issuer = ((X509Certificate) keyStore.getCertificate("test")).getIssuerX500Principal();
+
+        assertEquals("test", keyManager.chooseServerAlias("RSA", null, null));
+        assertEquals("test", keyManager.chooseServerAlias("RSA", null, null));
+        assertEquals("test", keyManager.chooseServerAlias("RSA", new X500Principal[] { issuer }, null));
+        // Decisions with issuers are not cached so a different issuer gets a different answer.
+        assertNull(keyManager.chooseServerAlias("RSA", new X500Principal[] { new X500Principal("CN=unknown") }, null));
+        // Key types with no usable key are probed during a handshake, they are not counted as a choice.
+        assertNull(keyManager.chooseServerAlias("EC", null, null));
+        assertNull(keyManager.chooseServerAlias("EC", null, null));
+
+        assertEquals(Collections.singletonMap("RSA:test", 3L), supplier.getAliasChoices());
+    }
+
+    public void testPrewarmNotRecorded() throws Exception {
+        KeyManagerSupplier supplier = KeyManagerSupplier.builder()
+                .setAlgorithm("SunX509")
+                .setKeyStoreSupplier(() -> keyStore)
+                .setPassword(PASSWORD)
+                .build();
+        SSLContext sslContext = SSLContextSupplier.builder()
+                .setProtocol("TLSv1.2")
+                .setKeyManagerSupplier(supplier)
+                .setPrewarmHandshakes(2)
+                .build()
+                .get();
+
+        assertTrue(supplier.getAliasChoices().toString(), supplier.getAliasChoices().isEmpty());
+        // Handshakes once the context is in use are recorded.
+        SSLContext clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+        LoopbackHandshake.handshake(sslContext, clientContext, null);
+        assertEquals(Collections.singletonMap("RSA:test", 1L), supplier.getAliasChoices());
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.darranl.ssl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link LatencyRecorder}.
+ */
+public class LatencyRecorderTest extends TestCase {
+
+    public void testEmpty() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getMean());
+        assertEquals(0, recorder.getPercentile(99));
+    }
+
+    public void testBucketsWithinPrecision() {
+        for (long value = 1; value < Long.MAX_VALUE / 2; value = value * 3 + 1) {
+            long bucketValue = LatencyRecorder.value(LatencyRecorder.index(value));
+            assertTrue(String.valueOf(value), Math.abs(bucketValue - value) <= value / 16 + 1);
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(i * 1000L);
+        }
+
+        assertEquals(1000, recorder.getCount());
+        assertEquals(500500, recorder.getMean());
+        assertEquals(1000000, recorder.getMax());
+        assertWithin(500000, recorder.getPercentile(50));
+        assertWithin(990000, recorder.getPercentile(99));
+        assertEquals(1000000, recorder.getPercentile(100));
+    }
+
+    public void testAdd() {
+        LatencyRecorder first = new LatencyRecorder();
+        LatencyRecorder second = new LatencyRecorder();
+        first.record(10);
+        second.record(20);
+        second.record(30);
+
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(20, first.getMean());
+        assertEquals(30, first.getMax());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(String.format("expected %d was %d", expected, actual), Math.abs(expected - actual) <= expected / 16);
+    }
+
+}
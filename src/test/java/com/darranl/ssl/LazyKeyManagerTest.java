@@ -0,0 +1,62 @@
+package com.darranl.ssl;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link LazyKeyManager}.
+ */
+public class LazyKeyManagerTest extends TestCase {
+
+    private static final char[] PASSWORD = "keystore_password".toCharArray();
+
+    private KeyStore keyStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = LazyKeyManagerTest.class.getResourceAsStream("/sni.keystore")) {
+            keyStore.load(is, PASSWORD);
+        }
+    }
+
+    public void testLazy() throws Exception {
+        LazyKeyManager keyManager = new LazyKeyManager(keyStore, PASSWORD, 0);
+        assertEquals(0, keyManager.getDecrypted());
+
+        assertEquals("tenant1-ec", keyManager.chooseServerAlias("EC", null, null));
+        assertEquals(3, keyManager.getServerAliases("RSA", null).length);
+        assertNull(keyManager.chooseServerAlias("DSA", null, null));
+        assertEquals(keyStore.getCertificate("tenant1-ec"), keyManager.getCertificateChain("tenant1-ec")[0]);
+        assertEquals(0, keyManager.getDecrypted());
+
+        assertEquals(keyStore.getKey("tenant1-ec", PASSWORD), keyManager.getPrivateKey("tenant1-ec"));
+        assertEquals(keyStore.getKey("tenant1-ec", PASSWORD), keyManager.getPrivateKey("tenant1-ec"));
+        assertEquals(1, keyManager.getDecrypted());
+        assertNull(keyManager.getPrivateKey("unknown"));
+    }
+
+    public void testIssuers() throws Exception {
+        LazyKeyManager keyManager = new LazyKeyManager(keyStore, PASSWORD, 0);
+        X500Principal issuer = ((X509Certificate) keyStore.getCertificate("wildcard")).getIssuerX500Principal();
+        assertEquals("wildcard", keyManager.chooseServerAlias("RSA", new X500Principal[] { issuer }, null));
+        assertNull(keyManager.chooseServerAlias("RSA", new X500Principal[] { new X500Principal("CN=unknown") }, null));
+    }
+
+    public void testParallel() throws Exception {
+        LazyKeyManager keyManager = new LazyKeyManager(keyStore, PASSWORD, 2);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (keyManager.getDecrypted() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, keyManager.getDecrypted());
+        assertEquals(keyStore.getKey("default", PASSWORD), keyManager.getPrivateKey("default"));
+        assertEquals(4, keyManager.getDecrypted());
+    }
+
+}
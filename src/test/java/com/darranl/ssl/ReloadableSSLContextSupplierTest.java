@@ -0,0 +1,63 @@
+package com.darranl.ssl;
+
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.MBeanServer;
+import javax.net.ssl.SSLContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link ReloadableSSLContextSupplier}.
+ */
+public class ReloadableSSLContextSupplierTest extends TestCase {
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    public void testReloadThroughJmx() throws Exception {
+        ReloadableSSLContextSupplier supplier = ReloadableSSLContextSupplier.builder()
+                .setSSLContextSupplier(this::createSSLContext)
+                .build();
+        SSLContext initial = supplier.get();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        supplier.register();
+        try {
+            assertEquals(0L, server.getAttribute(ReloadableSSLContextSupplier.OBJECT_NAME, "Generation"));
+            assertEquals(Boolean.TRUE, server.invoke(ReloadableSSLContextSupplier.OBJECT_NAME, "reload", null, null));
+            assertEquals(1L, server.getAttribute(ReloadableSSLContextSupplier.OBJECT_NAME, "Generation"));
+            assertNotSame(initial, supplier.get());
+        } finally {
+            server.unregisterMBean(ReloadableSSLContextSupplier.OBJECT_NAME);
+        }
+    }
+
+    public void testFailedReload() throws Exception {
+        ReloadableSSLContextSupplier supplier = ReloadableSSLContextSupplier.builder()
+                .setSSLContextSupplier(this::createSSLContext)
+                .build();
+        SSLContext initial = supplier.get();
+
+        failing.set(true);
+        assertFalse(supplier.reload());
+        assertSame(initial, supplier.get());
+        assertEquals(0, supplier.getGeneration());
+    }
+
+    private SSLContext createSSLContext() {
+        if (failing.get()) {
+            throw new IllegalStateException("Keystore unavailable");
+        }
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+            sslContext.init(null, null, null);
+
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
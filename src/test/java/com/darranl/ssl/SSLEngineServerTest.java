@@ -0,0 +1,203 @@
+package com.darranl.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link SSLEngineServer}.
+ */
+public class SSLEngineServerTest extends TestCase {
+
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private HandshakeMetrics metrics;
+    private final StringWriter events = new StringWriter();
+    private EventLog eventLog;
+    private int port;
+
+    private SSLEngineServer server;
+    private Thread serverThread;
+    private volatile Throwable serverFailure;
+
+    @Override
+    protected void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = SSLEngineServerTest.class.getResourceAsStream("/trusted-rsa.keystore")) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "keystore_password".toCharArray());
+        serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, TrustManagerSupplier.trustingSupplier().get(), null);
+
+        metrics = new HandshakeMetrics("test");
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+            serverThread.join(5000);
+            assertFalse("Server stopped", serverThread.isAlive());
+        }
+        assertNull("Server failure", serverFailure);
+    }
+
+    public void testHandshake() throws Exception {
+        start(HandshakeExecutorSupplier.callerRunsSupplier().get(), new ConnectionTimeouts(0, 0), null);
+
+        try (SSLSocket socket = connect()) {
+            socket.startHandshake();
+            // Without a file server the connection is closed once the handshake completes.
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        assertEquals(2, metrics.getFullHandshakes() + metrics.getResumedHandshakes());
+        assertEquals(0, metrics.getFailedHandshakes());
+    }
+
+    /**
+     * A connection which times out while its delegated task is running must not be advanced once the task completes.
+     */
+    public void testTimeoutDuringDelegatedTask() throws Exception {
+        CountDownLatch taskComplete = new CountDownLatch(1);
+        AtomicBoolean delayNext = new AtomicBoolean();
+        Executor executor = command -> {
+            if (delayNext.compareAndSet(true, false)) {
+                Thread slow = new Thread(() -> {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ignored) {
+                    }
+                    command.run();
+                    taskComplete.countDown();
+                }, "test-slow-task");
+                slow.setDaemon(true);
+                slow.start();
+            } else {
+                command.run();
+            }
+        };
+        ConnectionTimeouts timeouts = new ConnectionTimeouts(200, 0);
+        start(executor, timeouts, null);
+        delayNext.set(true);
+
+        try (SSLSocket socket = connect()) {
+            socket.startHandshake();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertTrue(taskComplete.await(5, TimeUnit.SECONDS));
+
+        // The selector loop must still be running and the timed out connection counted once.
+        try (SSLSocket socket = connect()) {
+            socket.startHandshake();
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        assertEquals(2, metrics.getFullHandshakes() + metrics.getResumedHandshakes());
+        assertEquals(1, metrics.getFailedHandshakes());
+        assertEquals(1, timeouts.getStatistics().get("handshakeTimeouts").longValue());
+
+        // The failed handshake is logged as FAILED only, not also as a HANDSHAKE of an invalid session.
+        eventLog.close();
+        assertTrue(events.toString(), events.toString().contains("FAILED host=127.0.0.1 reason=handshake"));
+        assertFalse(events.toString(), events.toString().contains("valid=false"));
+    }
+
+    /**
+     * A client which stalls during the handshake is ended by the handshake deadline, not the shorter idle timeout.
+     */
+    public void testStalledHandshake() throws Exception {
+        ConnectionTimeouts timeouts = new ConnectionTimeouts(500, 200);
+        start(HandshakeExecutorSupplier.callerRunsSupplier().get(), timeouts, null);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(10000);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        assertEquals(1, timeouts.getStatistics().get("handshakeTimeouts").longValue());
+        assertEquals(0, timeouts.getStatistics().get("idleTimeouts").longValue());
+    }
+
+    public void testFiles() throws Exception {
+        Path directory = Files.createTempDirectory("files");
+        Path file = directory.resolve("content.bin");
+        Files.write(file, new byte[100000]);
+        try {
+            start(HandshakeExecutorSupplier.callerRunsSupplier().get(), new ConnectionTimeouts(0, 0),
+                    new FileServer(directory, FileServer.Mode.MAPPED, new BufferPool(64)));
+
+            byte[] buffer = new byte[8192];
+            try (SSLSocket socket = connect()) {
+                assertEquals(100000, FileServer.fetch(socket, "content.bin", buffer));
+                // The connection remains open for further requests.
+                assertEquals(100000, FileServer.fetch(socket, "content.bin", buffer));
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    private void start(Executor taskExecutor, ConnectionTimeouts timeouts, FileServer fileServer) throws Exception {
+        eventLog = new EventLog(64, 1, events);
+        server = new SSLEngineServer(port, null, null, () -> serverContext, () -> taskExecutor, metrics, new BufferPool(64),
+                AdmissionControl.builder().build(), timeouts, eventLog, fileServer);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (Throwable t) {
+                serverFailure = t;
+            }
+        }, "test-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        // Wait for the server to be listening, the probe is a complete handshake so it is counted as one. Without a file
+        // server reading until the server closes ensures the handshake has been recorded.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try (SSLSocket probe = connect()) {
+                probe.startHandshake();
+                if (fileServer == null) {
+                    probe.getInputStream().read();
+                }
+                break;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private SSLSocket connect() throws IOException {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(10000);
+
+        return socket;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.darranl.ssl;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link SecureRandomSupplier}.
+ */
+public class SecureRandomSupplierTest extends TestCase {
+
+    public void testAlgorithm() {
+        for (SecureRandomSupplier.Mode mode : SecureRandomSupplier.Mode.values()) {
+            SecureRandom secureRandom = SecureRandomSupplier.builder()
+                    .setAlgorithm("SHA1PRNG")
+                    .setMode(mode)
+                    .build()
+                    .get();
+
+            assertEquals(mode.toString(), "SHA1PRNG", secureRandom.getAlgorithm());
+            assertRandom(secureRandom);
+        }
+    }
+
+    private static void assertRandom(SecureRandom secureRandom) {
+        byte[] first = new byte[16];
+        byte[] second = new byte[16];
+        secureRandom.nextBytes(first);
+        secureRandom.nextBytes(second);
+        assertFalse(Arrays.equals(first, second));
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.darranl.ssl;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link SniIndex}.
+ */
+public class SniIndexTest extends TestCase {
+
+    private SniIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = SniIndexTest.class.getResourceAsStream("/sni.keystore")) {
+            keyStore.load(is, "keystore_password".toCharArray());
+        }
+        index = SniIndex.build(keyStore);
+    }
+
+    public void testSize() {
+        assertEquals(4, index.size());
+    }
+
+    public void testExact() {
+        assertEquals("tenant1", index.chooseServerAlias("tenant1.example.com", "RSA"));
+        assertEquals("tenant1", index.chooseServerAlias("www.tenant1.example.com", "RSA"));
+        assertEquals("default", index.chooseServerAlias("localhost", "RSA"));
+    }
+
+    public void testNormalized() {
+        assertEquals("tenant1", index.chooseServerAlias("Tenant1.Example.COM.", "RSA"));
+    }
+
+    public void testKeyType() {
+        assertEquals("tenant1-ec", index.chooseServerAlias("tenant1.example.com", "EC"));
+        // For TLSv1.2 the key type may include the signature algorithm.
+        assertEquals("tenant1-ec", index.chooseServerAlias("tenant1.example.com", "EC_EC"));
+        assertNull(index.chooseServerAlias("localhost", "EC"));
+    }
+
+    public void testWildcard() {
+        assertEquals("wildcard", index.chooseServerAlias("a.example.org", "RSA"));
+        // A wildcard only matches a single label.
+        assertNull(index.chooseServerAlias("a.b.example.org", "RSA"));
+        assertNull(index.chooseServerAlias("example.org", "RSA"));
+    }
+
+    public void testUnknown() {
+        assertNull(index.chooseServerAlias("unknown.example.com", "RSA"));
+    }
+
+}
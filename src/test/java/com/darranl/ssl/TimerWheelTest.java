@@ -0,0 +1,46 @@
+package com.darranl.ssl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link TimerWheel}.
+ */
+public class TimerWheelTest extends TestCase {
+
+    public void testExpiry() throws Exception {
+        TimerWheel timerWheel = new TimerWheel(10, 4, "timer-wheel-test");
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong expiredNanos = new AtomicLong();
+        long start = System.nanoTime();
+
+        // Longer than a full revolution of the wheel so it is skipped at least once.
+        TimerWheel.Timeout timeout = timerWheel.schedule(() -> {
+            expiredNanos.set(System.nanoTime());
+            latch.countDown();
+        }, 100);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(expiredNanos.get() - start) >= 100);
+    }
+
+    public void testCancel() throws Exception {
+        TimerWheel timerWheel = new TimerWheel(10, 4, "timer-wheel-test");
+        CountDownLatch cancelledLatch = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        TimerWheel.Timeout cancelled = timerWheel.schedule(cancelledLatch::countDown, 20);
+        timerWheel.schedule(latch::countDown, 50);
+        assertTrue(cancelled.cancel());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelledLatch.getCount());
+        assertFalse(cancelled.isExpired());
+    }
+
+}